@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** A benchmarking class whose main program may be invoked as follows:
+ *      java gitlet.Bench BENCHMARK [ARGS...]
+ *  Each benchmark builds its own synthetic data in a temporary
+ *  directory and prints one line per measured variant.  Available
+ *  benchmarks:
+ *      blobs [FILES [BYTES]]  bytes on disk and checkout throughput of
+ *                             serialized versus deflated blobs.
+ *      checkout [FILES [BYTES]]  time to switch the working tree back and
+ *                             forth between two branches of FILES files,
+ *                             stored deflated and raw, loose and packed,
+ *                             sequentially and on every core.
+ *      encode [COMMITS [FILES]]  size and encode/decode speed of commits
+ *                             tracking FILES files under Java
+ *                             serialization and as compact commit and
+ *                             tree encodings.
+ *      hash [VALUES [BYTES]]  speed of hashing VALUES values of BYTES
+ *                             bytes, and a file of VALUES * BYTES bytes,
+ *                             with a digest looked up per hash and
+ *                             Formatter hex, and with each Hasher.
+ *  @author Kevin Wang
+ */
+public class Bench {
+
+    /**
+     * timed rounds per variant.
+     */
+    private static final int ROUNDS = 5;
+
+    /** Run the benchmark named by ARGS[0] with the remaining ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Bench BENCHMARK [ARGS...]");
+        } else if (args[0].equals("blobs")) {
+            blobs(intArg(args, 1, 200), intArg(args, 2, 64 * 1024));
+        } else if (args[0].equals("checkout")) {
+            checkout(intArg(args, 1, 50000), intArg(args, 2, 4096));
+        } else if (args[0].equals("encode")) {
+            encode(intArg(args, 1, 1000), intArg(args, 2, 1000));
+        } else if (args[0].equals("hash")) {
+            hash(intArg(args, 1, 200000), intArg(args, 2, 200));
+        } else {
+            System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Compare the serialized Blob format with the deflated one over
+     *  FILES synthetic text files of about BYTES bytes each. */
+    static void blobs(int files, int bytes) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        File legacyDir = Utils.join(dir, "serialized");
+        File deflatedDir = Utils.join(dir, "deflated");
+        File work = Utils.join(dir, "work");
+        legacyDir.mkdir();
+        deflatedDir.mkdir();
+        work.mkdir();
+        Random rand = new Random(files);
+        long raw = 0, legacySize = 0, deflatedSize = 0;
+        for (int i = 0; i < files; i += 1) {
+            String text = sourceText(rand, bytes);
+            raw += text.length();
+            byte[] legacy = Utils.serialize(
+                    new Blob("f" + i, text, Utils.sha1(text)));
+            byte[] deflated =
+                Blob.encode(text.getBytes(StandardCharsets.UTF_8));
+            Utils.writeContents(Utils.join(legacyDir, "f" + i), legacy);
+            Utils.writeContents(Utils.join(deflatedDir, "f" + i), deflated);
+            legacySize += legacy.length;
+            deflatedSize += deflated.length;
+        }
+        System.out.printf("working tree: %d files, %d bytes%n", files, raw);
+        System.out.printf("serialized:   %d bytes on disk%n", legacySize);
+        System.out.printf("deflated:     %d bytes on disk (%.1f%%)%n",
+                deflatedSize, 100.0 * deflatedSize / legacySize);
+
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            for (int i = 0; i < files; i += 1) {
+                Blob b = Utils.readObject(
+                        Utils.join(legacyDir, "f" + i), Blob.class);
+                Utils.writeContents(Utils.join(work, "f" + i),
+                        b.getContents());
+            }
+        }
+        report("serialized checkout", raw * ROUNDS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            for (int i = 0; i < files; i += 1) {
+                try (OutputStream out = new BufferedOutputStream(
+                        Files.newOutputStream(
+                                Utils.join(work, "f" + i).toPath()))) {
+                    Blob.copyContents(new FileInputStream(
+                            Utils.join(deflatedDir, "f" + i)), out);
+                }
+            }
+        }
+        report("deflated checkout", raw * ROUNDS, System.nanoTime() - start);
+        deleteTree(dir);
+    }
+
+    /** Time switching a working tree between two branches of FILES
+     *  files of about BYTES bytes each, with one thread and with one
+     *  thread per core, for blobs stored deflated and stored raw, first
+     *  as loose objects and then packed.  Raw blobs are copied to the
+     *  working files by the operating system. */
+    static void checkout(int files, int bytes) throws IOException {
+        for (int level : List.of(Blob.DEFAULT_LEVEL, 0)) {
+            String format = level == 0 ? "raw" : "deflated";
+            File dir = Files.createTempDirectory("gitlet-bench").toFile();
+            File gitlet = Utils.join(dir, ".gitlet");
+            gitlet.mkdir();
+            ObjectStore objects = new ObjectStore(gitlet);
+            BlobStore blobStore = new BlobStore(objects, level);
+            StatIndex index = new StatIndex(Utils.join(gitlet, "index"));
+            Random rand = new Random(files);
+            HashMap<String, String> branchA = new HashMap<>();
+            HashMap<String, String> branchB = new HashMap<>();
+            for (int i = 0; i < files; i += 1) {
+                for (HashMap<String, String> branch
+                         : List.of(branchA, branchB)) {
+                    byte[] text = sourceText(rand, bytes)
+                        .getBytes(StandardCharsets.UTF_8);
+                    String id = Utils.sha1(text);
+                    blobStore.write(id, text, null);
+                    branch.put("f" + i, id);
+                }
+            }
+            switchBranches(format + " loose", blobStore, index, dir,
+                    branchA, branchB, (long) files * bytes * 2);
+            objects.repack();
+            switchBranches(format + " packed",
+                    new BlobStore(objects, level), index, dir,
+                    branchA, branchB, (long) files * bytes * 2);
+            deleteTree(dir);
+        }
+    }
+
+    /** Time writing the files in B and then those in A, maps from
+     *  filename to blob id holding BYTES bytes in all, from BLOBSTORE to
+     *  the working tree at DIR, recording them in INDEX, with one thread
+     *  and with one thread per core.  Report each under the label NAME. */
+    static void switchBranches(String name, BlobStore blobStore,
+                               StatIndex index, File dir,
+                               Map<String, String> a, Map<String, String> b,
+                               long bytes) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new TreeSet<>(List.of(1, cores))) {
+            CheckoutEngine engine =
+                new CheckoutEngine(blobStore, index, dir, threads);
+            engine.write(a);
+            long start = System.nanoTime();
+            engine.write(b);
+            engine.write(a);
+            report(name + ", " + threads + " thr", bytes,
+                    System.nanoTime() - start);
+        }
+    }
+
+    /** Compare Java serialization of COMMITS commits, each tracking FILES
+     *  files in one directory, with the compact encodings of each commit
+     *  and its tree. */
+    static void encode(int commits, int files) {
+        Random rand = new Random(commits);
+        Commit[] all = new Commit[commits];
+        String parent = "";
+        for (int i = 0; i < commits; i += 1) {
+            HashMap<String, String> blobs = new HashMap<>();
+            for (int f = 0; f < files; f += 1) {
+                blobs.put("src/file" + f + ".java",
+                        Utils.sha1(Long.toString(rand.nextLong())));
+            }
+            all[i] = new Commit("commit " + i, parent,
+                    Utils.sha1(Codec.encodeMap(blobs)));
+            all[i].cacheBlobs(blobs);
+            parent = all[i].getName();
+        }
+        byte[][] legacy = new byte[commits][];
+        byte[][] compact = new byte[commits][];
+        byte[][] tree = new byte[commits][];
+        long legacySize = 0, compactSize = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            legacySize = 0;
+            for (int i = 0; i < commits; i += 1) {
+                legacy[i] = Utils.serialize(all[i]);
+                legacySize += legacy[i].length;
+            }
+        }
+        report("serialize", legacySize * ROUNDS, System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            compactSize = 0;
+            for (int i = 0; i < commits; i += 1) {
+                compact[i] = all[i].encode();
+                tree[i] = Codec.encodeMap(all[i].getBlobs());
+                compactSize += compact[i].length + tree[i].length;
+            }
+        }
+        report("encode", compactSize * ROUNDS, System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            for (int i = 0; i < commits; i += 1) {
+                Commit.decode(all[i].getName(), legacy[i]);
+            }
+        }
+        report("deserialize", legacySize * ROUNDS,
+                System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            for (int i = 0; i < commits; i += 1) {
+                Commit.decode(all[i].getName(), compact[i]);
+                Codec.decodeMap(tree[i]);
+            }
+        }
+        report("decode", compactSize * ROUNDS, System.nanoTime() - start);
+        System.out.printf("serialized:   %d bytes%n", legacySize);
+        System.out.printf("compact:      %d bytes (%.1f%%)%n",
+                compactSize, 100.0 * compactSize / legacySize);
+    }
+
+    /** Compare hashing VALUES values of BYTES bytes each, and a file
+     *  holding all of them, the way hashes were first computed, with a
+     *  MessageDigest looked up for each hash and hex produced by a
+     *  Formatter, with the Hashers. */
+    static void hash(int values, int bytes) throws IOException {
+        Random rand = new Random(values);
+        byte[][] data = new byte[values][bytes];
+        for (byte[] d : data) {
+            rand.nextBytes(d);
+        }
+        File file = File.createTempFile("gitlet-bench", ".dat");
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()))) {
+            for (byte[] d : data) {
+                out.write(d);
+            }
+        }
+        long total = (long) values * bytes;
+        for (int r = 0; r < ROUNDS; r += 1) {
+            long start = System.nanoTime();
+            for (byte[] d : data) {
+                lookupSha1(d);
+            }
+            report("lookup sha1 values", total, System.nanoTime() - start);
+            for (Hasher h : List.of(Hasher.SHA1, Hasher.SHA256)) {
+                start = System.nanoTime();
+                for (byte[] d : data) {
+                    h.hash(d);
+                }
+                report(h.name() + " values", total, System.nanoTime() - start);
+            }
+            start = System.nanoTime();
+            lookupSha1(Files.readAllBytes(file.toPath()));
+            report("lookup sha1 file", total, System.nanoTime() - start);
+            for (Hasher h : List.of(Hasher.SHA1, Hasher.SHA256)) {
+                start = System.nanoTime();
+                h.hash(file);
+                report(h.name() + " file", total, System.nanoTime() - start);
+            }
+        }
+        file.delete();
+    }
+
+    /** Returns the SHA-1 hash of BYTES computed with a newly looked-up
+     *  digest and hex-encoded with a Formatter. */
+    static String lookupSha1(byte[] bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(bytes);
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns roughly BYTES of source-like text drawn from RAND. */
+    static String sourceText(Random rand, int bytes) {
+        String[] words = {"public", "private", "static", "void", "int",
+            "return", "if", "else", "for", "while", "String", "new",
+            "null", "this", "=", "+=", "==", "(", ")", "{", "}", ";"};
+        StringBuilder sb = new StringBuilder(bytes + 80);
+        while (sb.length() < bytes) {
+            int indent = rand.nextInt(4) * 4;
+            for (int i = 0; i < indent; i += 1) {
+                sb.append(' ');
+            }
+            int n = 3 + rand.nextInt(8);
+            for (int i = 0; i < n; i += 1) {
+                sb.append(words[rand.nextInt(words.length)]).append(' ');
+            }
+            sb.append(rand.nextInt(1000)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Print the throughput of BYTES bytes processed in NANOS ns under
+     *  the label NAME. */
+    static void report(String name, long bytes, long nanos) {
+        System.out.printf("%-24s %8.1f ms %8.1f MB/s%n", name,
+                nanos / 1e6, bytes / 1e6 / (nanos / 1e9));
+    }
+
+    /** Returns ARGS[I] as an integer, or DFLT if it is absent. */
+    static int intArg(String[] args, int i, int dflt) {
+        return args.length > i ? Integer.parseInt(args[i]) : dflt;
+    }
+
+    /** Delete DIR and everything below it. */
+    static void deleteTree(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File f : children) {
+                deleteTree(f);
+            }
+        }
+        dir.delete();
+    }
+}
@@ -1,8 +1,70 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class Blob implements Serializable {
+    /**
+     * pinned so blobs written before the stored format existed still
+     * deserialize.
+     */
+    private static final long serialVersionUID = 986446722753073000L;
+
+    /**
+     * stored-format tag for deflated contents.
+     */
+    static final byte DEFLATED = 'Z';
+
+    /**
+     * stored-format tag for a deflated delta against another blob.
+     */
+    static final byte DELTA = 'D';
+
+    /**
+     * stored-format tag for deflated contents of a file too large to be
+     * held in memory, which are only ever streamed.  Large files are now
+     * stored as chunk manifests; blobs with this tag are only read.
+     */
+    static final byte STREAMED = 'S';
+
+    /**
+     * stored-format tag for a manifest listing the ids of the chunks
+     * that make up the contents, in order.
+     */
+    static final byte CHUNKED = 'C';
+
+    /**
+     * stored-format tag for contents kept uncompressed, which are copied
+     * to a working file without being decoded.
+     */
+    static final byte RAW = 'R';
+
+    /**
+     * zlib level used unless another is configured.
+     */
+    static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * first byte of a Java-serialized blob.
+     */
+    private static final int SERIALIZED = 0xac;
+
+    /**
+     * copy buffer size.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /**
      * fname.
      */
@@ -47,4 +109,110 @@ public class Blob implements Serializable {
         this.contents = c;
         this.sha1 = s;
     }
+
+    /** Returns the stored form of the file contents CONTENTS: the
+     *  DEFLATED tag followed by the zlib-compressed bytes. */
+    static byte[] encode(byte[] contents) {
+        return encode(contents, DEFAULT_LEVEL);
+    }
+
+    /** Returns the stored form of the file contents CONTENTS compressed
+     *  at zlib level LEVEL: the DEFLATED tag followed by the compressed
+     *  bytes or, if LEVEL is 0 or compressing does not make CONTENTS
+     *  smaller, the RAW tag followed by CONTENTS as they are. */
+    static byte[] encode(byte[] contents, int level) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (level != 0) {
+            bytes.write(DEFLATED);
+            deflate(contents, bytes, level);
+            if (bytes.size() <= contents.length) {
+                return bytes.toByteArray();
+            }
+            bytes.reset();
+        }
+        bytes.write(RAW);
+        bytes.writeBytes(contents);
+        return bytes.toByteArray();
+    }
+
+    /** Returns the stored form of a blob that is DELTA applied to the
+     *  blob BASEID, which is itself DEPTH - 1 deltas away from a full
+     *  blob: the DELTA tag, the base id, the depth and the deflated
+     *  delta. */
+    static byte[] encodeDelta(String baseId, int depth, byte[] delta) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(DELTA);
+        bytes.writeBytes(baseId.getBytes(StandardCharsets.US_ASCII));
+        bytes.write(depth);
+        deflate(delta, bytes, DEFAULT_LEVEL);
+        return bytes.toByteArray();
+    }
+
+    /** Returns the base id of the stored delta blob STORED. */
+    static String deltaBase(byte[] stored) {
+        return new String(stored, 1, Hasher.ID_LENGTH,
+                StandardCharsets.US_ASCII);
+    }
+
+    /** Returns the inflated delta held by the stored delta blob
+     *  STORED. */
+    static byte[] deltaBytes(byte[] stored) {
+        int off = Hasher.ID_LENGTH + 2;
+        try (InflaterInputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(stored, off, stored.length - off))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write DATA, zlib-compressed at level LEVEL, to BYTES. */
+    private static void deflate(byte[] data, ByteArrayOutputStream bytes,
+                                int level) {
+        Deflater deflater = new Deflater(level);
+        try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Inflate the full (non-delta) stored blob read from STORED onto OUT,
+     *  without materializing the whole file.  STREAMED blobs and blobs
+     *  written as serialized Blob objects, both left by older versions,
+     *  are also accepted.  Closes STORED. */
+    static void copyContents(InputStream stored, OutputStream out)
+        throws IOException {
+        try (PushbackInputStream in = new PushbackInputStream(stored)) {
+            int tag = in.read();
+            if (tag == DEFLATED || tag == STREAMED) {
+                try (InflaterInputStream inflated =
+                             new InflaterInputStream(in, new Inflater(),
+                                     BUFFER_SIZE)) {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    for (int n = inflated.read(buf); n >= 0;
+                         n = inflated.read(buf)) {
+                        out.write(buf, 0, n);
+                    }
+                }
+            } else if (tag == RAW) {
+                in.transferTo(out);
+            } else if (tag == SERIALIZED) {
+                in.unread(tag);
+                ObjectInputStream objs = new ObjectInputStream(in);
+                try {
+                    Blob b = (Blob) objs.readObject();
+                    out.write(b.getContents()
+                            .getBytes(StandardCharsets.UTF_8));
+                } catch (ClassNotFoundException | ClassCastException excp) {
+                    throw new IOException(excp.getMessage());
+                }
+            } else {
+                throw new IOException("unknown blob format");
+            }
+        }
+    }
 }
@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.nio.file.Files;
+
+/** File contents kept in an ObjectStore.  A blob is stored either in
+ *  full, deflated, or as a delta against an earlier blob (normally the
+ *  previous version of the same file).  Delta chains are at most
+ *  MAX_DEPTH long, and decoded contents are cached so that walking the
+ *  history of one file applies each delta once.  Files larger than
+ *  MAX_DELTA_SIZE are never held in memory: they are deflated and
+ *  inflated as streams.  Contents and chunks that do not compress, and
+ *  all of them when the compression level is 0, are stored raw, and are
+ *  checked out by copying them from the object file straight to the
+ *  working file.  A BlobStore may be used from several threads.
+ *  @author Kevin Wang
+ */
+class BlobStore {
+
+    /**
+     * longest delta chain.
+     */
+    static final int MAX_DEPTH = 10;
+    /**
+     * largest file that is delta-compressed or cached.
+     */
+    static final int MAX_DELTA_SIZE = 8 << 20;
+    /**
+     * decoded blobs held in memory.
+     */
+    private static final int CACHE_SIZE = 16;
+
+    /**
+     * backing store.
+     */
+    private final ObjectStore objects;
+    /**
+     * decoded contents by blob id.
+     */
+    private final ObjectCache<byte[]> decoded = new ObjectCache<>(CACHE_SIZE);
+    /**
+     * zlib level for new contents and chunks.
+     */
+    private final int level;
+
+    /** The blobs kept in OBJS, compressed at the default level. */
+    BlobStore(ObjectStore objs) {
+        this(objs, Blob.DEFAULT_LEVEL);
+    }
+
+    /** The blobs kept in OBJS, with new ones compressed at zlib level
+     *  COMPRESSION, from 0, which stores them raw, to 9, or -1 for zlib's
+     *  default. */
+    BlobStore(ObjectStore objs, int compression) {
+        if (compression < -1 || compression > 9) {
+            throw Utils.error("Bad value for core.compression: %d",
+                    compression);
+        }
+        this.objects = objs;
+        this.level = compression;
+    }
+
+    /** Returns true iff blob ID exists. */
+    boolean contains(String id) {
+        return objects.contains(ObjectStore.BLOB, id);
+    }
+
+    /** Store the contents of SOURCE as blob ID.  Files of up to
+     *  MAX_DELTA_SIZE bytes are stored as by write(ID, contents, BASEID).
+     *  Larger ones are split into content-defined chunks as a stream, in
+     *  constant space: the blob becomes a manifest of chunk ids and only
+     *  chunks not already stored are written, so storing a new version of
+     *  a large file costs about the size of the edit. */
+    void write(String id, File source, String baseId) {
+        if (source.length() <= MAX_DELTA_SIZE) {
+            write(id, Utils.readContents(source), baseId);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = objects.create(ObjectStore.BLOB, id)) {
+            out.write(Blob.CHUNKED);
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                String chunkId = Hasher.ids().hash(chunk);
+                if (!objects.contains(ObjectStore.CHUNK, chunkId)) {
+                    objects.write(ObjectStore.CHUNK, chunkId,
+                            Blob.encode(chunk, level));
+                }
+                out.write(chunkId.getBytes(StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store CONTENTS as blob ID, as a delta against blob BASEID when
+     *  that is smaller than storing it in full.  BASEID may be null. */
+    void write(String id, byte[] contents, String baseId) {
+        byte[] stored = Blob.encode(contents, level);
+        if (baseId != null && contents.length <= MAX_DELTA_SIZE
+                && contains(baseId)) {
+            int depth = depth(baseId) + 1;
+            if (depth > 0 && depth <= MAX_DEPTH) {
+                byte[] delta = Blob.encodeDelta(baseId, depth,
+                        Delta.create(read(baseId), contents));
+                if (delta.length < stored.length) {
+                    stored = delta;
+                }
+            }
+        }
+        objects.write(ObjectStore.BLOB, id, stored);
+        if (contents.length <= MAX_DELTA_SIZE) {
+            remember(id, contents);
+        }
+    }
+
+    /** Returns the number of deltas between blob ID and a full blob, or
+     *  -1 if ID is too large to serve as a delta base.  Only the header
+     *  of ID is read. */
+    private int depth(String id) {
+        try (InputStream in = objects.open(ObjectStore.BLOB, id)) {
+            int tag = in.read();
+            if (tag == Blob.STREAMED || tag == Blob.CHUNKED) {
+                return -1;
+            } else if (tag != Blob.DELTA) {
+                return 0;
+            }
+            in.skipNBytes(Hasher.ID_LENGTH);
+            return in.read();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of blob ID, which must not be a STREAMED or
+     *  CHUNKED blob. */
+    byte[] read(String id) {
+        byte[] result = cached(id);
+        if (result != null) {
+            return result;
+        }
+        byte[] stored = objects.read(ObjectStore.BLOB, id);
+        if (stored.length > 0 && stored[0] == Blob.DELTA) {
+            result = Delta.apply(read(Blob.deltaBase(stored)),
+                    Blob.deltaBytes(stored));
+        } else if (stored.length > 0 && stored[0] == Blob.RAW) {
+            result = Arrays.copyOfRange(stored, 1, stored.length);
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                Blob.copyContents(new ByteArrayInputStream(stored), out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            result = out.toByteArray();
+        }
+        if (result.length <= MAX_DELTA_SIZE) {
+            remember(id, result);
+        }
+        return result;
+    }
+
+    /** Write the contents of blob ID to OUT.  Full blobs are inflated
+     *  as a stream, chunked blobs one chunk at a time; deltas are rebuilt
+     *  in memory. */
+    void copyTo(String id, OutputStream out) throws IOException {
+        byte[] cached = cached(id);
+        if (cached != null) {
+            out.write(cached);
+            return;
+        }
+        PushbackInputStream in = new PushbackInputStream(
+                objects.open(ObjectStore.BLOB, id));
+        int tag = in.read();
+        if (tag == Blob.DELTA) {
+            in.close();
+            out.write(read(id));
+        } else if (tag == Blob.CHUNKED) {
+            try (InputStream manifest = in) {
+                byte[] chunkId = new byte[Hasher.ID_LENGTH];
+                while (manifest.readNBytes(chunkId, 0, chunkId.length)
+                       == chunkId.length) {
+                    Blob.copyContents(objects.open(ObjectStore.CHUNK,
+                            new String(chunkId, StandardCharsets.US_ASCII)),
+                            out);
+                }
+            }
+        } else {
+            in.unread(tag);
+            Blob.copyContents(in, out);
+        }
+    }
+
+    /** Write the contents of blob ID to OUT at its current position.  Raw
+     *  blobs, and the raw chunks of chunked ones, are transferred from the
+     *  object's file to OUT by the operating system, without being copied
+     *  into memory; everything else is written as by copyTo(ID, stream). */
+    void copyTo(String id, FileChannel out) throws IOException {
+        OutputStream stream = Channels.newOutputStream(out);
+        byte[] cached = cached(id);
+        if (cached != null) {
+            out.write(ByteBuffer.wrap(cached));
+            return;
+        }
+        int tag = transfer(ObjectStore.BLOB, id, out);
+        if (tag == Blob.RAW) {
+            return;
+        } else if (tag != Blob.CHUNKED) {
+            copyTo(id, stream);
+            return;
+        }
+        try (InputStream manifest = objects.open(ObjectStore.BLOB, id)) {
+            manifest.skipNBytes(1);
+            byte[] raw = new byte[Hasher.ID_LENGTH];
+            while (manifest.readNBytes(raw, 0, raw.length) == raw.length) {
+                String chunkId = new String(raw, StandardCharsets.US_ASCII);
+                if (transfer(ObjectStore.CHUNK, chunkId, out) != Blob.RAW) {
+                    Blob.copyContents(objects.open(ObjectStore.CHUNK,
+                            chunkId), stream);
+                }
+            }
+        }
+    }
+
+    /** Returns the stored-format tag of object ID of type TYPE, having
+     *  transferred its contents to OUT iff it is RAW. */
+    private int transfer(byte type, String id, FileChannel out)
+        throws IOException {
+        try (ObjectStore.Region region = objects.region(type, id)) {
+            int tag = region.first();
+            if (tag == Blob.RAW) {
+                region.transferTo(1, out);
+            }
+            return tag;
+        }
+    }
+
+    /** Returns the cached contents of blob ID, or null. */
+    private byte[] cached(String id) {
+        synchronized (decoded) {
+            return decoded.get(id);
+        }
+    }
+
+    /** Cache CONTENTS as the contents of blob ID. */
+    private void remember(String id, byte[] contents) {
+        synchronized (decoded) {
+            decoded.put(id, contents);
+        }
+    }
+}
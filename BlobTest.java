@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.random;
+import static org.junit.Assert.*;
+
+/** Tests of the stored forms of blobs and of reading them back.
+ *  @author Kevin Wang
+ */
+public class BlobTest {
+
+    /**
+     * metadata directory of the blob store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the contents of the stored blob STORED. */
+    private static byte[] decode(byte[] stored) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Blob.copyContents(new ByteArrayInputStream(stored), out);
+        return out.toByteArray();
+    }
+
+    /** Returns the contents of blob ID, as streamed by a store that has
+     *  not seen it written. */
+    private byte[] stream(String id) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BlobStore(new ObjectStore(tmp.getRoot())).copyTo(id, out);
+        return out.toByteArray();
+    }
+
+    /** Text is stored deflated, in a fraction of its size, and inflates
+     *  back as a stream. */
+    @Test
+    public void deflated() throws IOException {
+        byte[] text = "a line of text in a file\n".repeat(2000)
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] stored = Blob.encode(text);
+        assertEquals(Blob.DEFLATED, stored[0]);
+        assertTrue(stored.length < text.length / 10);
+        assertArrayEquals(text, decode(stored));
+
+        String id = Hasher.ids().hash(text);
+        new BlobStore(new ObjectStore(tmp.getRoot())).write(id, text, null);
+        assertTrue(tmp.file("blobs/" + id).length() < text.length / 10);
+        assertArrayEquals(text, stream(id));
+    }
+
+    /** Contents that deflating would not shrink, and all contents at
+     *  level 0, are stored raw. */
+    @Test
+    public void raw() throws IOException {
+        byte[] noise = random(1, 5000);
+        byte[] stored = Blob.encode(noise);
+        assertEquals(Blob.RAW, stored[0]);
+        assertEquals(noise.length + 1, stored.length);
+        assertArrayEquals(noise, decode(stored));
+
+        byte[] text = "text ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        assertEquals(Blob.RAW, Blob.encode(text, 0)[0]);
+        assertEquals(Blob.DEFLATED, Blob.encode(text, 9)[0]);
+        assertArrayEquals(text, decode(Blob.encode(text, 0)));
+        assertArrayEquals(new byte[0], decode(Blob.encode(new byte[0])));
+    }
+
+    /** Bytes that are not UTF-8 are stored and hashed as they are, and
+     *  files are hashed as a stream to the id of their bytes. */
+    @Test
+    public void binary() throws IOException {
+        byte[] bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = (byte) (i * 7);
+        }
+        Utils.writeContents(tmp.file("bin"), (Object) bytes);
+        String id = Hasher.ids().hash(tmp.file("bin"));
+        assertEquals(Hasher.ids().hash(bytes), id);
+        new BlobStore(new ObjectStore(tmp.getRoot()))
+            .write(id, tmp.file("bin"), null);
+        assertArrayEquals(bytes, stream(id));
+        assertArrayEquals(bytes,
+                new BlobStore(new ObjectStore(tmp.getRoot())).read(id));
+    }
+
+    /** Blobs left by older versions, streamed or serialized, still
+     *  read back. */
+    @Test
+    public void legacy() throws IOException {
+        byte[] text = "old contents\n".repeat(50)
+            .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        streamed.write(Blob.STREAMED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(streamed)) {
+            out.write(text);
+        }
+        assertArrayEquals(text, decode(streamed.toByteArray()));
+
+        byte[] serialized = Utils.serialize(new Blob("f.txt",
+                new String(text, StandardCharsets.UTF_8), Utils.sha1(text)));
+        assertArrayEquals(text, decode(serialized));
+        String id = Utils.sha1(text);
+        new ObjectStore(tmp.getRoot()).write(ObjectStore.BLOB, id,
+                serialized);
+        assertArrayEquals(text, stream(id));
+    }
+
+    /** Returns the contents of blob ID, as copied by a store that has
+     *  not seen it written into a channel after a few bytes of PREFIX. */
+    private byte[] transfer(String id, String prefix) throws IOException {
+        File f = tmp.file("out");
+        f.delete();
+        try (RandomAccessFile out = new RandomAccessFile(f, "rw");
+             FileChannel ch = out.getChannel()) {
+            out.write(prefix.getBytes(StandardCharsets.UTF_8));
+            new BlobStore(new ObjectStore(tmp.getRoot())).copyTo(id, ch);
+            assertEquals(ch.size(), ch.position());
+        }
+        byte[] result = Utils.readContents(f);
+        String head = new String(result, 0, prefix.length(),
+                StandardCharsets.UTF_8);
+        assertEquals(prefix, head);
+        return Arrays.copyOfRange(result, prefix.length(),
+                result.length);
+    }
+
+    /** Blobs copied into a file channel land at its position whether
+     *  they are raw, deflated, chunked or packed. */
+    @Test
+    public void channels() throws IOException {
+        byte[] text = "text ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        String textId = Hasher.ids().hash(text);
+        byte[] noise = random(2, 3000);
+        String noiseId = Hasher.ids().hash(noise);
+        BlobStore blobs = new BlobStore(new ObjectStore(tmp.getRoot()));
+        blobs.write(textId, text, null);
+        new BlobStore(new ObjectStore(tmp.getRoot()), 0)
+            .write(noiseId, noise, null);
+        assertArrayEquals(text, transfer(textId, "pre"));
+        assertArrayEquals(noise, transfer(noiseId, "prefix"));
+
+        ByteArrayOutputStream large = new ByteArrayOutputStream();
+        for (int i = 0; large.size() <= BlobStore.MAX_DELTA_SIZE; i += 1) {
+            large.write(i % 2 == 0 ? random(i, 1 << 16)
+                        : ("line " + i + "\n").repeat(5000)
+                            .getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] big = large.toByteArray();
+        String bigId = Hasher.ids().hash(big);
+        Utils.writeContents(tmp.file("big"), (Object) big);
+        blobs.write(bigId, tmp.file("big"), null);
+        assertEquals(Blob.CHUNKED,
+                Utils.readContents(tmp.file("blobs/" + bigId))[0]);
+        assertArrayEquals(big, transfer(bigId, "x"));
+
+        new ObjectStore(tmp.getRoot()).repack();
+        assertFalse(tmp.file("blobs/" + noiseId).exists());
+        assertArrayEquals(noise, transfer(noiseId, "p"));
+        assertArrayEquals(text, transfer(textId, ""));
+    }
+}
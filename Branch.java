@@ -1,8 +1,18 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 public class Branch implements Serializable {
+    /**
+     * pinned so branches written before the compact encoding existed
+     * still deserialize.
+     */
+    private static final long serialVersionUID = -6394612236179592667L;
+
     /**
      * last commit.
      */
@@ -18,6 +28,33 @@ public class Branch implements Serializable {
         this.lastCommit = c;
     }
 
+    /** Returns this branch in the compact encoding. */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(Codec.VERSION);
+            Codec.writeString(out, name);
+            Codec.writeString(out, lastCommit);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the branch stored as BYTES, either by encode or by Java
+     *  serialization. */
+    public static Branch decode(byte[] bytes) {
+        if (Codec.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, Branch.class);
+        }
+        try (DataInputStream in = Codec.reader(bytes)) {
+            String n = Codec.readString(in);
+            return new Branch(n, Codec.readString(in));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     public String getName() {
         return this.name;
     }
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes blobs into the working tree.  Large sets of files are decoded
+ *  and written concurrently on a bounded pool of worker threads; the
+ *  caller is responsible for any safety checks before calling write.
+ *  @author Kevin Wang
+ */
+class CheckoutEngine {
+
+    /**
+     * files per task.
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * contents source.
+     */
+    private final BlobStore blobs;
+    /**
+     * stat cache to record written files in.
+     */
+    private final StatIndex index;
+    /**
+     * working tree root.
+     */
+    private final File root;
+    /**
+     * worker threads.
+     */
+    private final int threads;
+
+    /** An engine writing blobs from BLOBSTORE into the tree rooted at
+     *  ROOTDIR with up to NTHREADS threads, recording each written file
+     *  in STATINDEX. */
+    CheckoutEngine(BlobStore blobStore, StatIndex statIndex, File rootDir,
+                   int nThreads) {
+        this.blobs = blobStore;
+        this.index = statIndex;
+        this.root = rootDir;
+        this.threads = Math.max(1, nThreads);
+    }
+
+    /** Write blob SHA1 to the working file FILENAME, creating its
+     *  directory if need be.  Raw blobs are copied into the file without
+     *  passing through memory. */
+    void write(String filename, String sha1) {
+        File target = Utils.join(root, filename);
+        target.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            blobs.copyTo(sha1, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index.update(filename, target, sha1);
+    }
+
+    /** Write each blob in FILES, a map from filename to blob id, to its
+     *  working file. */
+    void write(Map<String, String> files) {
+        if (threads == 1 || files.size() <= BATCH) {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                write(e.getKey(), e.getValue());
+            }
+            return;
+        }
+        ArrayList<Map.Entry<String, String>> todo =
+            new ArrayList<>(files.entrySet());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < todo.size(); i += BATCH) {
+                int start = i;
+                int end = Math.min(todo.size(), i + BATCH);
+                tasks.add(pool.submit(() -> {
+                    for (int k = start; k < end; k += 1) {
+                        write(todo.get(k).getKey(), todo.get(k).getValue());
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("checkout interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.random;
+import static org.junit.Assert.*;
+
+/** Tests of CheckoutEngine.
+ *  @author Kevin Wang
+ */
+public class CheckoutEngineTest {
+
+    /**
+     * working tree, with the metadata directory below it.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns a store of blobs in the metadata directory, made if need
+     *  be. */
+    private BlobStore blobs() {
+        tmp.file(".gitlet").mkdir();
+        return new BlobStore(new ObjectStore(tmp.file(".gitlet")));
+    }
+
+    /** Returns an engine writing into the temporary directory with
+     *  THREADS threads from BLOBS. */
+    private CheckoutEngine engine(BlobStore blobs, int threads) {
+        return new CheckoutEngine(blobs,
+                new StatIndex(tmp.file(".gitlet/index")), tmp.getRoot(),
+                threads);
+    }
+
+    /** Returns the contents of the Ith file, compressible or not. */
+    private static byte[] contents(int i) {
+        return i % 3 == 0 ? random(i, 100 + i)
+            : ("file " + i + "\n").repeat(i % 50 + 1)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Many files, in many directories, are all written with their
+     *  contents however many threads write them. */
+    @Test
+    public void writesEveryFile() {
+        BlobStore blobs = blobs();
+        TreeMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < 500; i += 1) {
+            String id = Hasher.ids().hash(contents(i));
+            blobs.write(id, contents(i), null);
+            files.put("d" + (i % 7) + "/e" + (i % 3) + "/f" + i, id);
+        }
+        for (int threads : new int[] {1, 4}) {
+            engine(blobs(), threads).write(files);
+            for (int i = 0; i < 500; i += 1) {
+                File f = tmp.file("d" + (i % 7) + "/e" + (i % 3) + "/f" + i);
+                assertArrayEquals(contents(i), Utils.readContents(f));
+                f.delete();
+            }
+        }
+    }
+
+    /** A file that cannot be written fails the whole checkout, even when
+     *  a worker thread writes it. */
+    @Test
+    public void failureReported() {
+        BlobStore blobs = blobs();
+        TreeMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < 200; i += 1) {
+            String id = Hasher.ids().hash(contents(i));
+            blobs.write(id, contents(i), null);
+            files.put("f" + i, id);
+        }
+        tmp.write("f150/in-the-way", "");
+        try {
+            engine(blobs, 4).write(files);
+            fail("wrote over a directory");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(tmp.file("f150").isDirectory());
+        }
+    }
+}
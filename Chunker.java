@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into content-defined chunks with a Gear rolling hash,
+ *  using FastCDC's normalized chunking: a chunk boundary is declared
+ *  where the high bits of the hash are zero, with a stricter mask before
+ *  the target size and a looser one after it.  Because boundaries depend
+ *  only on nearby content, an edit changes only the chunks around it.
+ *  @author Kevin Wang
+ */
+class Chunker {
+
+    /**
+     * smallest chunk, except at the end of the stream.
+     */
+    static final int MIN_SIZE = 16 << 10;
+    /**
+     * target chunk size.
+     */
+    static final int AVG_SIZE = 64 << 10;
+    /**
+     * largest chunk.
+     */
+    static final int MAX_SIZE = 256 << 10;
+    /**
+     * mask used below AVG_SIZE: 18 high bits.
+     */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    /**
+     * mask used above AVG_SIZE: 14 high bits.
+     */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+    /**
+     * random value per byte, fixed so chunking is reproducible.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random rand = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = rand.nextLong();
+        }
+    }
+
+    /**
+     * source.
+     */
+    private final InputStream in;
+    /**
+     * read-ahead buffer.
+     */
+    private final byte[] buf = new byte[2 * MAX_SIZE];
+    /**
+     * start of unconsumed data in buf.
+     */
+    private int start;
+    /**
+     * end of valid data in buf.
+     */
+    private int end;
+    /**
+     * true once IN is exhausted.
+     */
+    private boolean eof;
+
+    /** A chunker over the contents of IN. */
+    Chunker(InputStream input) {
+        this.in = input;
+    }
+
+    /** Returns the next chunk, or null at the end of the stream. */
+    byte[] next() throws IOException {
+        fill();
+        int avail = end - start;
+        if (avail == 0) {
+            return null;
+        }
+        int len = cut(start, Math.min(avail, MAX_SIZE));
+        byte[] result = Arrays.copyOfRange(buf, start, start + len);
+        start += len;
+        return result;
+    }
+
+    /** Make at least MAX_SIZE bytes available after START, unless the
+     *  stream ends first. */
+    private void fill() throws IOException {
+        if (end - start >= MAX_SIZE || eof) {
+            return;
+        }
+        System.arraycopy(buf, start, buf, 0, end - start);
+        end -= start;
+        start = 0;
+        while (end < buf.length) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+                break;
+            }
+            end += n;
+        }
+    }
+
+    /** Returns the length of the chunk starting at buf[FROM], given that
+     *  N bytes are available. */
+    private int cut(int from, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        long h = 0;
+        int i = MIN_SIZE;
+        int normal = Math.min(AVG_SIZE, n);
+        for (; i < normal; i += 1) {
+            h = (h << 1) + GEAR[buf[from + i] & 0xff];
+            if ((h & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            h = (h << 1) + GEAR[buf[from + i] & 0xff];
+            if ((h & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+}
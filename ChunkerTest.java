@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.random;
+import static org.junit.Assert.*;
+
+/** Tests of Chunker and of blobs stored as chunks.
+ *  @author Kevin Wang
+ */
+public class ChunkerTest {
+
+    /**
+     * files and metadata directory of the blob store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the chunks of IN. */
+    private static List<byte[]> chunks(InputStream in) throws IOException {
+        Chunker chunker = new Chunker(in);
+        ArrayList<byte[]> result = new ArrayList<>();
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** Returns the chunks of DATA. */
+    private static List<byte[]> chunks(byte[] data) throws IOException {
+        return chunks(new ByteArrayInputStream(data));
+    }
+
+    /** Returns the hashes of CHUNKS. */
+    private static HashSet<String> ids(List<byte[]> chunks) {
+        HashSet<String> result = new HashSet<>();
+        for (byte[] c : chunks) {
+            result.add(Utils.sha1(c));
+        }
+        return result;
+    }
+
+    /** Chunks concatenate to the input and respect the size limits. */
+    @Test
+    public void concatenation() throws IOException {
+        assertTrue(chunks(new byte[0]).isEmpty());
+        for (int size : new int[] {1, Chunker.MIN_SIZE,
+                                   Chunker.MAX_SIZE + 1, 3 << 20}) {
+            byte[] data = random(size, size);
+            List<byte[]> chunks = chunks(data);
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (int i = 0; i < chunks.size(); i += 1) {
+                byte[] c = chunks.get(i);
+                assertTrue(c.length <= Chunker.MAX_SIZE);
+                assertTrue(i == chunks.size() - 1
+                        || c.length > Chunker.MIN_SIZE);
+                joined.write(c);
+            }
+            assertArrayEquals(data, joined.toByteArray());
+        }
+        assertEquals(4, chunks(new byte[4 * Chunker.MAX_SIZE]).size());
+    }
+
+    /** Chunks do not depend on how the input arrives. */
+    @Test
+    public void readSizes() throws IOException {
+        byte[] data = random(1, 2 << 20);
+        InputStream trickle = new FilterInputStream(
+                new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        List<byte[]> whole = chunks(data);
+        List<byte[]> pieces = chunks(trickle);
+        assertEquals(whole.size(), pieces.size());
+        for (int i = 0; i < whole.size(); i += 1) {
+            assertArrayEquals(whole.get(i), pieces.get(i));
+        }
+    }
+
+    /** An insertion changes only the chunks around it. */
+    @Test
+    public void locality() throws IOException {
+        byte[] data = random(2, 4 << 20);
+        byte[] edited = new byte[data.length + 100];
+        int at = data.length / 2;
+        System.arraycopy(data, 0, edited, 0, at);
+        System.arraycopy(random(3, 100), 0, edited, at, 100);
+        System.arraycopy(data, at, edited, at + 100, data.length - at);
+        HashSet<String> before = ids(chunks(data));
+        HashSet<String> after = ids(chunks(edited));
+        int total = after.size();
+        after.removeAll(before);
+        assertTrue(total > 20);
+        assertTrue(after.size() <= 2);
+    }
+
+    /** A large file stored as chunks reads back whole, both deflated and
+     *  raw, loose and packed, and a new version adds few chunks. */
+    @Test
+    public void storedFile() throws IOException {
+        int size = BlobStore.MAX_DELTA_SIZE + (1 << 20);
+        byte[] data = random(4, size);
+        byte[] edited = data.clone();
+        System.arraycopy(random(5, 50), 0, edited, size / 3, 50);
+        File source = tmp.newFile();
+        File target = tmp.newFile();
+        for (int level : new int[] {Blob.DEFAULT_LEVEL, 0}) {
+            File gitlet = tmp.newFolder();
+            ObjectStore objects = new ObjectStore(gitlet);
+            BlobStore blobs = new BlobStore(objects, level);
+            Files.write(source.toPath(), data);
+            String id = Utils.sha1(data);
+            blobs.write(id, source, null);
+            int chunks = Utils.plainFilenamesIn(
+                    Utils.join(gitlet, "chunks")).size();
+            Files.write(source.toPath(), edited);
+            String editedId = Utils.sha1(edited);
+            blobs.write(editedId, source, id);
+            int added = Utils.plainFilenamesIn(
+                    Utils.join(gitlet, "chunks")).size() - chunks;
+            assertTrue(added >= 1 && added <= 2);
+
+            for (int pass = 0; pass < 2; pass += 1) {
+                BlobStore reread = new BlobStore(objects);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reread.copyTo(id, out);
+                assertArrayEquals(data, out.toByteArray());
+                try (FileChannel ch = FileChannel.open(target.toPath(),
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    reread.copyTo(editedId, ch);
+                }
+                assertArrayEquals(edited, Files.readAllBytes(target.toPath()));
+                objects.repack();
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The compact binary encoding used for commits, trees, branches and the
+ *  staging area in place of Java serialization.  An encoded value starts
+ *  with a version byte, then its fields in a fixed order.  Lengths and
+ *  counts are unsigned varints (7 bits per byte, low bits first).  A
+ *  string is its UTF-8 length plus one (0 for null) and its bytes.  A map
+ *  from file names to object ids is an entry count followed by its
+ *  entries in name order; each name is stored as the number of leading
+ *  bytes it shares with the previous one and the remaining bytes, and
+ *  each id as its 20 raw bytes.  Equal values thus always have equal
+ *  encodings.  Values written by Java serialization, which start with
+ *  0xac instead, are recognized so they can still be read.
+ *  @author Kevin Wang
+ */
+class Codec {
+
+    /**
+     * current encoding version.  Version 2 commits name a tree where
+     * version 1 commits held their file map inline.
+     */
+    static final int VERSION = 2;
+    /**
+     * current encoding version of commits.  Version 3 commits keep their
+     * date only as a time in ms, not also as a formatted line.  Other
+     * values stay at VERSION, so the ids of unchanged trees do not.
+     */
+    static final int COMMIT_VERSION = 3;
+    /**
+     * first byte of Java-serialized data.
+     */
+    private static final int SERIALIZED = 0xac;
+
+    /** Returns true iff BYTES were written by Java serialization. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] & 0xff) == SERIALIZED;
+    }
+
+    /** Returns a stream over the fields of the encoded value BYTES, past
+     *  its version byte.  Throws GitletException if BYTES were written in
+     *  a version this code does not know. */
+    static DataInputStream reader(byte[] bytes) {
+        if (bytes.length == 0 || bytes[0] < 1
+            || bytes[0] > COMMIT_VERSION) {
+            throw Utils.error("Unknown encoding version %d.",
+                    bytes.length == 0 ? -1 : bytes[0] & 0xff);
+        }
+        return new DataInputStream(
+                new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+    }
+
+    /** Write the non-negative number N to OUT as a varint. */
+    static void writeVarint(DataOutput out, int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            out.writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+
+    /** Returns a number written by writeVarint from IN. */
+    static int readVarint(DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+
+    /** Write S to OUT. */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /** Returns a string written by writeString from IN. */
+    static String readString(DataInput in) throws IOException {
+        int len = readVarint(in) - 1;
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write the object id ID to OUT as 20 raw bytes.  Throws
+     *  IllegalArgumentException if ID is not a full id. */
+    static void writeId(DataOutput out, String id) throws IOException {
+        if (id == null || id.length() != Hasher.ID_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + id);
+        }
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        for (int i = 0; i < Hasher.ID_BYTES; i += 1) {
+            int hi = Character.digit(id.charAt(2 * i), 16);
+            int lo = Character.digit(id.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not an object id: "
+                        + id);
+            }
+            raw[i] = (byte) (hi << 4 | lo);
+        }
+        out.write(raw);
+    }
+
+    /** Returns an id written by writeId from IN. */
+    static String readId(DataInput in) throws IOException {
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        in.readFully(raw);
+        return Hasher.hex(raw, 0, Hasher.ID_BYTES);
+    }
+
+    /** Write MAP, from file names to object ids, to OUT in name
+     *  order. */
+    static void writeMap(DataOutput out, Map<String, String> map)
+        throws IOException {
+        writeVarint(out, map.size());
+        byte[] prev = new byte[0];
+        for (Map.Entry<String, String> e : new TreeMap<>(map).entrySet()) {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int limit = Math.min(prev.length, key.length);
+            while (shared < limit && prev[shared] == key[shared]) {
+                shared += 1;
+            }
+            writeVarint(out, shared);
+            writeVarint(out, key.length - shared);
+            out.write(key, shared, key.length - shared);
+            writeId(out, e.getValue());
+            prev = key;
+        }
+    }
+
+    /** Returns a map written by writeMap from IN. */
+    static HashMap<String, String> readMap(DataInput in)
+        throws IOException {
+        int n = readVarint(in);
+        HashMap<String, String> result = new HashMap<>(n * 4 / 3 + 1);
+        byte[] key = new byte[0];
+        for (int i = 0; i < n; i += 1) {
+            int shared = readVarint(in);
+            int rest = readVarint(in);
+            byte[] next = new byte[shared + rest];
+            System.arraycopy(key, 0, next, 0, shared);
+            in.readFully(next, shared, rest);
+            key = next;
+            result.put(new String(key, StandardCharsets.UTF_8), readId(in));
+        }
+        return result;
+    }
+
+    /** Returns the encoding of MAP, from file names to object ids. */
+    static byte[] encodeMap(Map<String, String> map) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeMap(out, map);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the map from file names to object ids encoded in BYTES, by
+     *  encodeMap or by Java serialization. */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, String> decodeMap(byte[] bytes) {
+        if (isSerialized(bytes)) {
+            return Utils.deserialize(bytes, HashMap.class);
+        }
+        try (DataInputStream in = reader(bytes)) {
+            return readMap(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Codec and of the encodings of commits and branches.
+ *  @author Kevin Wang
+ */
+public class CodecTest {
+
+    /**
+     * default time zone, restored after each test.
+     */
+    private final TimeZone zone = TimeZone.getDefault();
+    /**
+     * default locale, restored after each test.
+     */
+    private final Locale locale = Locale.getDefault();
+
+    /** Restore the default time zone and locale. */
+    @After
+    public void restore() {
+        TimeZone.setDefault(zone);
+        Locale.setDefault(locale);
+    }
+
+    /** Returns BYTES, the fields of a value, preceded by version byte
+     *  VERSION. */
+    private static byte[] versioned(int version, byte[] bytes) {
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = (byte) version;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    /** Numbers, strings and ids read back as written. */
+    @Test
+    public void fields() throws IOException {
+        int[] numbers = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+        String[] strings = {null, "", "a", "héllo wörld ☃",
+                            "x".repeat(300)};
+        String id = Utils.sha1("id");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int n : numbers) {
+                Codec.writeVarint(out, n);
+            }
+            for (String s : strings) {
+                Codec.writeString(out, s);
+            }
+            Codec.writeId(out, id);
+        }
+        byte[] encoded = versioned(Codec.VERSION, bytes.toByteArray());
+        try (DataInputStream in = Codec.reader(encoded)) {
+            for (int n : numbers) {
+                assertEquals(n, Codec.readVarint(in));
+            }
+            for (String s : strings) {
+                assertEquals(s, Codec.readString(in));
+            }
+            assertEquals(id, Codec.readId(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /** Maps read back as written, whatever order they were built in,
+     *  and values in unknown versions are rejected. */
+    @Test
+    public void maps() {
+        Random rand = new Random(6);
+        HashMap<String, String> map = new HashMap<>();
+        assertEquals(map, Codec.decodeMap(Codec.encodeMap(map)));
+        for (int i = 0; i < 500; i += 1) {
+            String name = "dir" + rand.nextInt(5) + "/file" + i
+                + (i % 7 == 0 ? "é" : "") + ".txt";
+            map.put(name, Utils.sha1(name));
+        }
+        map.put("a", Utils.sha1("a"));
+        map.put("a/", Utils.sha1("a/"));
+        byte[] encoded = Codec.encodeMap(map);
+        assertEquals(map, Codec.decodeMap(encoded));
+        assertArrayEquals(encoded,
+                Codec.encodeMap(new HashMap<>(Codec.decodeMap(encoded))));
+        assertEquals(map, Codec.decodeMap(Utils.serialize(map)));
+        for (byte[] bad : new byte[][] {new byte[0],
+                versioned(0, new byte[1]),
+                versioned(Codec.COMMIT_VERSION + 1, new byte[1])}) {
+            try {
+                Codec.decodeMap(bad);
+                fail("read an unknown version");
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().startsWith("Unknown encoding"));
+            }
+        }
+    }
+
+    /** Commits and branches read back as written, with their names. */
+    @Test
+    public void commitsAndBranches() {
+        Commit root = new Commit("initial commit", "", Utils.sha1("t0"),
+                true);
+        Commit c = new Commit("méssage\nsecond line", root.getName(),
+                Utils.sha1("t1"));
+        c.setSecondParent(Utils.sha1("other"));
+        for (Commit orig : new Commit[] {root, c}) {
+            Commit read = Commit.decode(orig.getName(), orig.encode());
+            assertEquals(orig.getName(), read.getName());
+            assertEquals(orig.getMessage(), read.getMessage());
+            assertEquals(orig.getDate(), read.getDate());
+            assertEquals(orig.getParent(), read.getParent());
+            assertEquals(orig.getSecondParent(), read.getSecondParent());
+            assertEquals(orig.getTree(), read.getTree());
+            assertEquals(orig.getTimestamp(), read.getTimestamp());
+            assertEquals(orig.toString(), read.toString());
+            assertArrayEquals(orig.encode(), read.encode());
+        }
+        Branch b = Branch.decode(new Branch("master", c.getName()).encode());
+        assertEquals("master", b.getName());
+        assertEquals(c.getName(), b.getLastCommit());
+    }
+
+    /** A commit's name does not depend on the time zone or locale it
+     *  was made in, though its date line does. */
+    @Test
+    public void namesIgnoreZone() {
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        Locale.setDefault(Locale.US);
+        Commit utc = new Commit("initial commit", "", Utils.sha1("t"), true);
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        Locale.setDefault(Locale.GERMANY);
+        Commit ist = new Commit("initial commit", "", Utils.sha1("t"), true);
+        assertEquals(utc.getName(), ist.getName());
+        assertEquals("Date: Thu Jan 01 05:30:00 1970 +0530",
+                ist.getTimestamp());
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        assertEquals("Date: Thu Jan 01 00:00:00 1970 +0000",
+                utc.getTimestamp());
+        long dec30 = 1735516800000L;
+        assertEquals("Date: Mon Dec 30 00:00:00 2024 +0000",
+                Commit.formatDate(dec30));
+    }
+
+    /** Commits in the version 2 encoding, which also held a formatted
+     *  date line, still read back, keeping their stored names. */
+    @Test
+    public void legacyCommits() throws IOException {
+        String tree = Utils.sha1("tree");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(2);
+            Codec.writeString(out, "old");
+            Codec.writeString(out, "Date: Thu Jan 01 00:00:00 1970 +0000");
+            out.writeLong(1000L);
+            Codec.writeString(out, "");
+            Codec.writeString(out, "");
+            Codec.writeId(out, tree);
+        }
+        String id = Utils.sha1(bytes.toByteArray());
+        Commit c = Commit.decode(id, bytes.toByteArray());
+        assertEquals(id, c.getName());
+        assertEquals("old", c.getMessage());
+        assertEquals(1000L, c.getDate().getTime());
+        assertEquals("", c.getParent());
+        assertEquals(tree, c.getTree());
+        assertEquals(Commit.formatDate(1000L), c.getTimestamp());
+    }
+}
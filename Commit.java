@@ -1,11 +1,21 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 
 public class Commit implements Serializable {
+    /**
+     * pinned so commits written before the compact encoding existed
+     * still deserialize.
+     */
+    private static final long serialVersionUID = -4616049418282126484L;
 
     /**
      * msg.
@@ -13,14 +23,14 @@ public class Commit implements Serializable {
     private String message;
 
     /**
-     * time.
+     * blobs.
      */
-    private String timestamp;
+    private HashMap<String, String> blobs;
 
     /**
-     * blobs.
+     * root tree, or null for commits that hold their blobs inline.
      */
-    private HashMap<String, String> blobs;
+    private String tree;
 
     /**
      * parent.
@@ -43,30 +53,79 @@ public class Commit implements Serializable {
     private Date date;
 
 
-    public Commit(String m, String pN, HashMap<String, String> b) {
+    public Commit(String m, String pN, String t) {
         this.message = m;
         this.parent = pN;
-        this.name = Utils.sha1(Utils.serialize(this));
-        this.blobs = b;
+        this.tree = t;
         this.date = new Date();
-        SimpleDateFormat sdf = new SimpleDateFormat(
-                "EE MMM dd kk:mm:ss YYYY Z");
-        this.timestamp = "Date: " + sdf.format(date);
-
+        rehash();
     }
 
-    public Commit(String m, String pN, HashMap<String, String> b, boolean i) {
+    public Commit(String m, String pN, String t, boolean i) {
         if (i) {
             this.message = m;
             this.parent = pN;
-            this.name = Utils.sha1(Utils.serialize(this));
-            this.blobs = b;
+            this.tree = t;
             this.date = new Date(0);
-            SimpleDateFormat sdf = new SimpleDateFormat(
-                    "EE MMM dd kk:mm:ss YYYY Z");
-            this.timestamp = "Date: " + sdf.format(date);
+            rehash();
+        }
+
+    }
+
+    /** A commit whose fields are filled in by decode. */
+    private Commit() {
+    }
+
+    /** Returns this commit in the compact encoding.  A commit's name is
+     *  the hash of this encoding, which covers every field but the
+     *  name itself, and its files through the id of its tree.  The date
+     *  is stored as a time in ms, so the name does not depend on the
+     *  locale or time zone it was made in. */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(Codec.COMMIT_VERSION);
+            Codec.writeString(out, message);
+            out.writeLong(date.getTime());
+            Codec.writeString(out, parent);
+            Codec.writeString(out, secondParent);
+            Codec.writeId(out, tree);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the commit named ID stored as BYTES, either by encode or,
+     *  for commits made before it existed, by Java serialization. */
+    public static Commit decode(String id, byte[] bytes) {
+        if (Codec.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, Commit.class);
+        }
+        Commit c = new Commit();
+        try (DataInputStream in = Codec.reader(bytes)) {
+            c.message = Codec.readString(in);
+            if (bytes[0] < 3) {
+                Codec.readString(in);
+            }
+            c.date = new Date(in.readLong());
+            c.parent = Codec.readString(in);
+            c.secondParent = Codec.readString(in);
+            if (bytes[0] == 1) {
+                c.blobs = Codec.readMap(in);
+            } else {
+                c.tree = Codec.readId(in);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        c.name = id;
+        return c;
+    }
 
+    /** Recompute the name of this commit from its contents. */
+    private void rehash() {
+        this.name = Hasher.ids().hash(encode());
     }
 
     public String getName() {
@@ -79,14 +138,20 @@ public class Commit implements Serializable {
 
     public void setMessage(String m) {
         this.message = m;
+        rehash();
     }
 
+    /** Returns the date line of this commit, as printed by log. */
     public String getTimestamp() {
-        return timestamp;
+        return formatDate(date.getTime());
     }
 
-    public void setTimestamp(String ts) {
-        this.timestamp = ts;
+    /** Returns the date line, as printed by log, of a commit made at
+     *  TIME ms, in the local time zone. */
+    static String formatDate(long time) {
+        SimpleDateFormat sdf = new SimpleDateFormat(
+                "EE MMM dd HH:mm:ss yyyy Z", Locale.US);
+        return "Date: " + sdf.format(new Date(time));
     }
 
     public HashMap<String, String> getBlobs() {
@@ -95,6 +160,7 @@ public class Commit implements Serializable {
 
     public void setBlobs(HashMap<String, String> b) {
         this.blobs = b;
+        rehash();
     }
 
     public String getParent() {
@@ -103,6 +169,7 @@ public class Commit implements Serializable {
 
     public void setParent(String p) {
         this.parent = p;
+        rehash();
     }
 
     public void setName(String n) {
@@ -115,6 +182,19 @@ public class Commit implements Serializable {
 
     public void setSecondParent(String sP) {
         this.secondParent = sP;
+        rehash();
+    }
+
+    /** Returns the id of the root tree of this commit, or null if its
+     *  blobs are held inline. */
+    public String getTree() {
+        return tree;
+    }
+
+    /** Record B, the files of this commit's tree, so that getBlobs need
+     *  not read the tree again.  The name does not change. */
+    void cacheBlobs(HashMap<String, String> b) {
+        this.blobs = b;
     }
 
     public Date getDate() {
@@ -126,7 +206,7 @@ public class Commit implements Serializable {
         String s = "";
         s += "===\n";
         s += "commit " + name + "\n";
-        s += timestamp + "\n";
+        s += getTimestamp() + "\n";
         s += message + "\n";
 
         return s;
@@ -0,0 +1,485 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** The shape of the commit history, kept in .gitlet/commit-graph so that
+ *  ancestry questions, and log, can be answered without deserializing
+ *  commits.  The file is a header followed by one fixed-size record per
+ *  commit, in an order where parents precede their children: the raw
+ *  commit id, the record numbers of its two parents (-1 if absent), its
+ *  generation number (1 for a root, otherwise one more than its parents'
+ *  maximum), its timestamp, and the offset of its message in the
+ *  companion file commit-graph.text.  Both files are
+ *  memory-mapped and only ever appended to, text first.
+ *  @author Kevin Wang
+ */
+class CommitGraph {
+
+    /**
+     * file magic.
+     */
+    private static final int MAGIC = 0x47434752;
+    /**
+     * file version.
+     */
+    private static final int VERSION = 3;
+    /**
+     * header length.
+     */
+    private static final int HEADER = 8;
+    /**
+     * record length.
+     */
+    private static final int RECORD = Hasher.ID_BYTES + 4 + 4 + 4 + 8 + 8;
+    /**
+     * records searched from the end before building a full lookup table.
+     */
+    private static final int SCAN_LIMIT = 256;
+    /**
+     * paint flag: reachable from the first commit.
+     */
+    private static final int FROM_A = 1;
+    /**
+     * paint flag: reachable from the second commit.
+     */
+    private static final int FROM_B = 2;
+    /**
+     * paint flag: below a common ancestor already found.
+     */
+    private static final int STALE = 4;
+
+    /**
+     * graph file.
+     */
+    private final File file;
+    /**
+     * messages.
+     */
+    private final File textFile;
+    /**
+     * true once the files have been mapped, or found missing.
+     */
+    private boolean opened;
+    /**
+     * mapped records, or null if there were none.
+     */
+    private MappedByteBuffer map;
+    /**
+     * mapped text, or null if there was none.
+     */
+    private MappedByteBuffer text;
+    /**
+     * number of records in the file.
+     */
+    private int count;
+    /**
+     * record numbers by id, built only when a scan from the end fails.
+     */
+    private HashMap<String, Integer> positions;
+    /**
+     * parents, generations, times and text offsets of records appended
+     * since the file was mapped.
+     */
+    private final ArrayList<long[]> pending = new ArrayList<>();
+    /**
+     * ids of pending records.
+     */
+    private final ArrayList<String> pendingIds = new ArrayList<>();
+    /**
+     * record numbers of pending records by id.
+     */
+    private final HashMap<String, Integer> pendingPositions =
+        new HashMap<>();
+    /**
+     * messages of pending records.
+     */
+    private final ArrayList<String> pendingText = new ArrayList<>();
+
+    /** The commit graph stored in FILE. */
+    CommitGraph(File f) {
+        this.file = f;
+        this.textFile = new File(f.getPath() + ".text");
+    }
+
+    /** Map the graph files, if they exist and have not been mapped
+     *  already.  Records appended later stay pending in memory.  A graph
+     *  in an older format, or with an incomplete header, is discarded, to
+     *  be rebuilt; an incomplete last record is cut off. */
+    private void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        map = null;
+        text = null;
+        count = 0;
+        positions = null;
+        pending.clear();
+        pendingIds.clear();
+        pendingPositions.clear();
+        pendingText.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        trim();
+        if (file.length() < HEADER) {
+            file.delete();
+            textFile.delete();
+            return;
+        }
+        map = mapFile(file);
+        if (map.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt commit graph.");
+        } else if (map.getInt(4) != VERSION) {
+            map = null;
+            file.delete();
+            textFile.delete();
+            return;
+        }
+        text = mapFile(textFile);
+        count = (map.capacity() - HEADER) / RECORD;
+    }
+
+    /** Map the graph files again if they are not as this graph last left
+     *  them: another process has appended to them, or replaced them,
+     *  since they were mapped.  Records this graph appended itself are
+     *  then read from the new mapping. */
+    private void refresh() {
+        open();
+        long expected = map == null && pending.isEmpty() ? 0
+            : HEADER + (long) (count + pending.size()) * RECORD;
+        if (file.length() != expected) {
+            opened = false;
+            open();
+        }
+    }
+
+    /** Cut the graph file back to its last complete record, if a crash
+     *  left one half written, so that the records appended next line up.
+     *  Appends hold a lock on the file, so one still in progress in
+     *  another process is waited for rather than cut off. */
+    private void trim() {
+        long len = file.length();
+        if (len >= HEADER && (len - HEADER) % RECORD == 0) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            ch.lock();
+            len = ch.size();
+            if (len < HEADER) {
+                ch.truncate(0);
+            } else {
+                ch.truncate(len - (len - HEADER) % RECORD);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of F, mapped read-only. */
+    private static MappedByteBuffer mapFile(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath())) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        open();
+        return count + pending.size();
+    }
+
+    /** Returns the id of commit number I. */
+    String id(int i) {
+        if (i >= count) {
+            return pendingIds.get(i - count);
+        }
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        map.get(HEADER + i * RECORD, raw);
+        return Hasher.hex(raw, 0, Hasher.ID_BYTES);
+    }
+
+    /** Returns the record number of the first parent of commit I, or
+     *  -1. */
+    int parent1(int i) {
+        return (int) field(i, 0);
+    }
+
+    /** Returns the record number of the second parent of commit I, or
+     *  -1. */
+    int parent2(int i) {
+        return (int) field(i, 1);
+    }
+
+    /** Returns the generation number of commit I. */
+    int generation(int i) {
+        return (int) field(i, 2);
+    }
+
+    /** Returns the timestamp, in ms, of commit I. */
+    long time(int i) {
+        return field(i, 3);
+    }
+
+    /** Returns the date line, as in Commit.getTimestamp, of commit I. */
+    String timestamp(int i) {
+        return Commit.formatDate(time(i));
+    }
+
+    /** Returns the message of commit I. */
+    String message(int i) {
+        if (i >= count) {
+            return pendingText.get(i - count);
+        }
+        int pos = (int) field(i, 4);
+        byte[] bytes = new byte[text.getInt(pos)];
+        text.get(pos + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns field F (parent1, parent2, generation, time or text
+     *  offset) of commit I. */
+    private long field(int i, int f) {
+        if (i >= count) {
+            return pending.get(i - count)[f];
+        }
+        int pos = HEADER + i * RECORD + Hasher.ID_BYTES;
+        if (f < 3) {
+            return map.getInt(pos + 4 * f);
+        }
+        return map.getLong(pos + 12 + 8 * (f - 3));
+    }
+
+    /** Returns the record number of commit ID, or -1 if it is not in the
+     *  graph.  New commits usually descend from recent ones, so the last
+     *  records are searched first. */
+    int indexOf(String id) {
+        open();
+        if (id == null || id.isEmpty()) {
+            return -1;
+        }
+        Integer p = pendingPositions.get(id);
+        if (p != null) {
+            return p;
+        }
+        if (positions == null) {
+            byte[] key = toRaw(id);
+            for (int i = count - 1; i >= 0 && i >= count - SCAN_LIMIT;
+                 i -= 1) {
+                if (idEquals(i, key)) {
+                    return i;
+                }
+            }
+            if (count <= SCAN_LIMIT) {
+                return -1;
+            }
+            positions = new HashMap<>();
+            for (int i = 0; i < count; i += 1) {
+                positions.put(id(i), i);
+            }
+        }
+        return positions.getOrDefault(id, -1);
+    }
+
+    /** Returns true iff record I holds the raw id KEY. */
+    private boolean idEquals(int i, byte[] key) {
+        int pos = HEADER + i * RECORD;
+        for (int k = 0; k < Hasher.ID_BYTES; k += 1) {
+            if (map.get(pos + k) != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Make sure commit ID and all of its ancestors are in the graph,
+     *  reading missing commits with LOADER, and return its record number.
+     *  Normally only ID itself is new; a repository whose graph is
+     *  missing or stale is brought up to date here. */
+    int add(String id, Function<String, Commit> loader) {
+        refresh();
+        ArrayDeque<String> todo = new ArrayDeque<>();
+        todo.push(id);
+        int before = pending.size();
+        while (!todo.isEmpty()) {
+            String c = todo.peek();
+            if (indexOf(c) >= 0) {
+                todo.pop();
+                continue;
+            }
+            Commit commit = loader.apply(c);
+            String pa = commit.getParent();
+            String pb = commit.getSecondParent();
+            int ia = indexOf(pa);
+            int ib = indexOf(pb);
+            boolean ready = true;
+            if (pa != null && !pa.isEmpty() && ia < 0) {
+                todo.push(pa);
+                ready = false;
+            }
+            if (pb != null && !pb.isEmpty() && ib < 0) {
+                todo.push(pb);
+                ready = false;
+            }
+            if (!ready) {
+                continue;
+            }
+            todo.pop();
+            int gen = 1 + Math.max(ia < 0 ? 0 : generation(ia),
+                    ib < 0 ? 0 : generation(ib));
+            pending.add(new long[] {ia, ib, gen,
+                commit.getDate().getTime(), -1});
+            pendingIds.add(c);
+            pendingPositions.put(c, count + pendingIds.size() - 1);
+            pendingText.add(commit.getMessage());
+        }
+        if (pending.size() > before) {
+            flush(before);
+        }
+        return indexOf(id);
+    }
+
+    /** Append the pending records from number FROM on to the files. */
+    private void flush(int from) {
+        boolean fresh = !file.isFile();
+        if (fresh) {
+            textFile.delete();
+        }
+        long offset = textFile.length();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        for (int k = from; k < pending.size(); k += 1) {
+            pending.get(k)[4] = offset + strings.size();
+            byte[] bytes = pendingText.get(k).getBytes(
+                    StandardCharsets.UTF_8);
+            strings.writeBytes(ByteBuffer.allocate(4)
+                    .putInt(bytes.length).array());
+            strings.writeBytes(bytes);
+        }
+        ByteBuffer out = ByteBuffer.allocate(
+                (fresh ? HEADER : 0) + (pending.size() - from) * RECORD);
+        if (fresh) {
+            out.putInt(MAGIC).putInt(VERSION);
+        }
+        for (int k = from; k < pending.size(); k += 1) {
+            long[] rec = pending.get(k);
+            out.put(toRaw(pendingIds.get(k)));
+            out.putInt((int) rec[0]).putInt((int) rec[1]);
+            out.putInt((int) rec[2]).putLong(rec[3]).putLong(rec[4]);
+        }
+        out.flip();
+        append(textFile, ByteBuffer.wrap(strings.toByteArray()));
+        append(file, out);
+    }
+
+    /** Append the contents of BUF to F, holding a lock on F until the
+     *  channel is closed. */
+    private static void append(File f, ByteBuffer buf) {
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ch.lock();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the id of the best common ancestor of commits A and B,
+     *  the latest one if there are several, or null if they share no
+     *  history.  Commits are read with LOADER only if they are missing
+     *  from the graph.  The walk paints ancestors of A and B in order of
+     *  decreasing generation and stops once every commit still queued
+     *  lies below a common ancestor already found.  A commit is queued at
+     *  most once at a time and its flags are read when it leaves the
+     *  queue, so a running count of the queued commits that are not
+     *  STALE tells when to stop. */
+    String mergeBase(String a, String b, Function<String, Commit> loader) {
+        int ia = add(a, loader);
+        int ib = add(b, loader);
+        if (ia == ib) {
+            return a;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                Comparator.comparingInt((Integer i) -> generation(i))
+                .reversed());
+        HashSet<Integer> queued = new HashSet<>();
+        flags.put(ia, FROM_A);
+        flags.put(ib, FROM_B);
+        queue.add(ia);
+        queue.add(ib);
+        queued.add(ia);
+        queued.add(ib);
+        int active = 2;
+        ArrayList<Integer> found = new ArrayList<>();
+        while (active > 0) {
+            int x = queue.poll();
+            queued.remove(x);
+            int f = flags.get(x);
+            if ((f & STALE) == 0) {
+                active -= 1;
+                if ((f & (FROM_A | FROM_B)) == (FROM_A | FROM_B)) {
+                    found.add(x);
+                    f |= STALE;
+                    flags.put(x, f);
+                }
+            }
+            for (int p : new int[] {parent1(x), parent2(x)}) {
+                if (p < 0) {
+                    continue;
+                }
+                int pf = flags.getOrDefault(p, 0);
+                int nf = pf | f;
+                if (nf == pf) {
+                    continue;
+                }
+                flags.put(p, nf);
+                if (queued.add(p)) {
+                    queue.add(p);
+                    if ((nf & STALE) == 0) {
+                        active += 1;
+                    }
+                } else if ((pf & STALE) == 0 && (nf & STALE) != 0) {
+                    active -= 1;
+                }
+            }
+        }
+        int best = -1;
+        for (int x : found) {
+            if (best < 0 || time(x) > time(best)) {
+                best = x;
+            }
+        }
+        return best < 0 ? null : id(best);
+    }
+
+    /** The 20 raw bytes of hex id ID. */
+    private static byte[] toRaw(String id) {
+        byte[] result = new byte[Hasher.ID_BYTES];
+        byte[] hex = id.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < Hasher.ID_BYTES; i += 1) {
+            result[i] = (byte) (Character.digit(hex[2 * i], 16) << 4
+                                | Character.digit(hex[2 * i + 1], 16));
+        }
+        return result;
+    }
+}
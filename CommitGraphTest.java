@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of CommitGraph.
+ *  @author Kevin Wang
+ */
+public class CommitGraphTest {
+
+    /**
+     * directory of the graph files.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /**
+     * commits by id.
+     */
+    private final HashMap<String, Commit> commits = new HashMap<>();
+    /**
+     * ids of the commits, in the order made.
+     */
+    private final ArrayList<String> order = new ArrayList<>();
+
+    /** Make a commit with first parent P1, "" for none, and second parent
+     *  P2, which may be null, and return its id. */
+    private String commit(String p1, String p2) {
+        Commit c = new Commit("commit " + order.size(), p1,
+                Utils.sha1("tree"));
+        if (p2 != null) {
+            c.setSecondParent(p2);
+        }
+        commits.put(c.getName(), c);
+        order.add(c.getName());
+        return c.getName();
+    }
+
+    /** Returns the ids of ID and all of its ancestors. */
+    private HashSet<String> ancestors(String id) {
+        HashSet<String> result = new HashSet<>();
+        ArrayList<String> todo = new ArrayList<>(List.of(id));
+        while (!todo.isEmpty()) {
+            String c = todo.remove(todo.size() - 1);
+            if (c == null || c.isEmpty() || !result.add(c)) {
+                continue;
+            }
+            todo.add(commits.get(c).getParent());
+            todo.add(commits.get(c).getSecondParent());
+        }
+        return result;
+    }
+
+    /** Returns the common ancestors of A and B that are not ancestors of
+     *  other common ancestors. */
+    private HashSet<String> bestCommon(String a, String b) {
+        HashSet<String> common = ancestors(a);
+        common.retainAll(ancestors(b));
+        HashSet<String> result = new HashSet<>(common);
+        for (String c : common) {
+            HashSet<String> below = ancestors(c);
+            below.remove(c);
+            result.removeAll(below);
+        }
+        return result;
+    }
+
+    /** Merge bases of random pairs in a random history with many merges
+     *  are best common ancestors. */
+    @Test
+    public void randomHistory() {
+        Random rand = new Random(11);
+        String root = commit("", null);
+        ArrayList<String> tips = new ArrayList<>(List.of(root));
+        for (int i = 0; i < 400; i += 1) {
+            int k = rand.nextInt(tips.size());
+            String tip = tips.get(k);
+            if (tips.size() < 20 && rand.nextInt(4) == 0) {
+                tips.add(commit(tip, null));
+            } else if (tips.size() > 1 && rand.nextInt(3) == 0) {
+                int j = (k + 1 + rand.nextInt(tips.size() - 1)) % tips.size();
+                tips.set(k, commit(tip, tips.get(j)));
+            } else {
+                tips.set(k, commit(tip, null));
+            }
+        }
+        CommitGraph graph = new CommitGraph(tmp.file("g"));
+        for (int n = 0; n < 200; n += 1) {
+            String a = order.get(rand.nextInt(order.size()));
+            String b = order.get(rand.nextInt(order.size()));
+            String base = graph.mergeBase(a, b, commits::get);
+            HashSet<String> best = bestCommon(a, b);
+            assertTrue(best.contains(base));
+            for (String c : best) {
+                assertTrue(commits.get(c).getDate().getTime()
+                        <= commits.get(base).getDate().getTime());
+            }
+        }
+    }
+
+    /** Merge bases are found in a history of many branches merged one
+     *  by one, where the walk keeps thousands of commits queued. */
+    @Test
+    public void wideHistory() {
+        String root = commit("", null);
+        String fork = commit(root, null);
+        String merged = commit(fork, null);
+        ArrayList<String> branches = new ArrayList<>();
+        for (int i = 0; i < 3000; i += 1) {
+            branches.add(commit(fork, null));
+        }
+        for (String b : branches) {
+            merged = commit(merged, b);
+        }
+        String side = commit(branches.get(0), null);
+        CommitGraph graph = new CommitGraph(tmp.file("g"));
+        assertEquals(branches.get(0),
+                graph.mergeBase(merged, side, commits::get));
+        assertEquals(fork, graph.mergeBase(commit(fork, null),
+                merged, commits::get));
+        assertEquals(merged, graph.mergeBase(merged, merged, commits::get));
+    }
+
+    /** A graph that another process has appended to since it was mapped
+     *  maps it again before adding records, rather than numbering them
+     *  over the other process's. */
+    @Test
+    public void appendedElsewhere() {
+        File file = tmp.file("g");
+        String c0 = commit("", null);
+        String c1 = commit(c0, null);
+        CommitGraph first = new CommitGraph(file);
+        first.add(c1, commits::get);
+        String c2 = commit(c1, null);
+        CommitGraph second = new CommitGraph(file);
+        second.add(c2, commits::get);
+        String c3 = commit(c2, null);
+        String c4 = commit(c1, null);
+        first.add(c3, commits::get);
+        first.add(c4, commits::get);
+
+        CommitGraph reread = new CommitGraph(file);
+        assertEquals(order.size(), reread.size());
+        for (int i = 0; i < reread.size(); i += 1) {
+            Commit c = commits.get(reread.id(i));
+            assertNotNull(c);
+            assertEquals(c.getParent().isEmpty() ? -1
+                    : reread.indexOf(c.getParent()), reread.parent1(i));
+            assertEquals(c.getMessage(), reread.message(i));
+        }
+        assertEquals(c1, reread.mergeBase(c3, c4, commits::get));
+        assertEquals(c1, first.mergeBase(c3, c4, commits::get));
+    }
+
+    /** Assert that the graph in FILE holds every commit made, each with
+     *  its parents and message. */
+    private void assertComplete(File file) {
+        CommitGraph graph = new CommitGraph(file);
+        assertEquals(order.size(), graph.size());
+        for (int i = 0; i < graph.size(); i += 1) {
+            Commit c = commits.get(graph.id(i));
+            assertNotNull(c);
+            assertEquals(c.getParent().isEmpty() ? -1
+                    : graph.indexOf(c.getParent()), graph.parent1(i));
+            assertEquals(c.getMessage(), graph.message(i));
+        }
+    }
+
+    /** A record half written by a crash is cut off when the graph is
+     *  next opened, so the records added after it line up, and a graph
+     *  whose header is incomplete is rebuilt. */
+    @Test
+    public void tornRecord() {
+        File file = tmp.file("g");
+        String tip = commit("", null);
+        for (int i = 0; i < 5; i += 1) {
+            tip = commit(tip, null);
+        }
+        new CommitGraph(file).add(tip, commits::get);
+        long whole = file.length();
+        Utils.writeContents(file, Utils.readContents(file),
+                new byte[] {1, 2, 3, 4, 5, 6, 7});
+        String torn = tip;
+        for (int i = 0; i < 3; i += 1) {
+            tip = commit(tip, null);
+        }
+        CommitGraph graph = new CommitGraph(file);
+        graph.add(tip, commits::get);
+        assertComplete(file);
+        assertEquals(torn, graph.mergeBase(torn, tip, commits::get));
+        assertTrue(file.length() > whole);
+
+        Utils.writeContents(file, new byte[] {0x47, 0x43});
+        new CommitGraph(file).add(tip, commits::get);
+        assertComplete(file);
+    }
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.Set;
+
+/** Repository settings, kept as a properties file in .gitlet/config.
+ *  A setting KEY may be overridden for a single run with the system
+ *  property gitlet.KEY, except for the settings fixed when the
+ *  repository is created.
+ *  @author Kevin Wang
+ */
+class Config {
+
+    /**
+     * settings fixed when the repository is created, which no system
+     * property overrides: reading a repository with another hash
+     * algorithm would name new objects inconsistently with old ones.
+     */
+    static final Set<String> FIXED = Set.of("core.hash");
+
+    /**
+     * backing file.
+     */
+    private final File file;
+    /**
+     * settings, or null until loaded.
+     */
+    private Properties props;
+
+    /** The settings stored in FILE. */
+    Config(File f) {
+        this.file = f;
+    }
+
+    /** Returns the value of KEY, or DFLT if it is not set. */
+    String get(String key, String dflt) {
+        String override = FIXED.contains(key) ? null
+            : System.getProperty("gitlet." + key);
+        if (override != null) {
+            return override;
+        }
+        return load().getProperty(key, dflt);
+    }
+
+    /** Returns the value of KEY as an integer, or DFLT if it is not set.
+     *  Throws GitletException if the value is not a number. */
+    int getInt(String key, int dflt) {
+        String value = get(key, null);
+        if (value == null) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Set KEY to VALUE and save the settings. */
+    void set(String key, String value) {
+        load().setProperty(key, value);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            props.store(out, "gitlet repository settings");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the settings, reading them if need be. */
+    private Properties load() {
+        if (props == null) {
+            props = new Properties();
+            if (file.isFile()) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    props.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return props;
+    }
+}
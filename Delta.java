@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/** Binary copy/insert deltas between two versions of a file.  A delta
+ *  is the length of the target followed by a sequence of instructions,
+ *  each either COPY (an offset and length in the base) or INSERT (a
+ *  length and literal bytes).  Matches are found by indexing the base
+ *  in fixed-size blocks and sliding a rolling hash over the target.
+ *  @author Kevin Wang
+ */
+class Delta {
+
+    /**
+     * block size used to find matches.
+     */
+    private static final int BLOCK = 16;
+    /**
+     * rolling-hash multiplier.
+     */
+    private static final int PRIME = 31;
+    /**
+     * PRIME ** (BLOCK - 1), for removing a byte from the hash.
+     */
+    private static final int HIGH;
+    /**
+     * copy instruction.
+     */
+    private static final int COPY = 1;
+    /**
+     * insert instruction.
+     */
+    private static final int INSERT = 0;
+
+    static {
+        int h = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            h *= PRIME;
+        }
+        HIGH = h;
+    }
+
+    /** Returns a delta that rebuilds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(target.length);
+            int pending = 0;
+            int i = 0;
+            int h = target.length >= BLOCK ? hash(target, 0) : 0;
+            while (i + BLOCK <= target.length) {
+                Integer at = index.get(h);
+                if (at != null && matches(base, at, target, i)) {
+                    int len = BLOCK;
+                    while (at + len < base.length && i + len < target.length
+                           && base[at + len] == target[i + len]) {
+                        len += 1;
+                    }
+                    int back = 0;
+                    while (back < i - pending && back < at
+                           && base[at - back - 1] == target[i - back - 1]) {
+                        back += 1;
+                    }
+                    insert(out, target, pending, i - back);
+                    out.writeByte(COPY);
+                    out.writeInt(at - back);
+                    out.writeInt(len + back);
+                    i += len;
+                    pending = i;
+                    if (i + BLOCK <= target.length) {
+                        h = hash(target, i);
+                    }
+                } else {
+                    if (i + BLOCK < target.length) {
+                        h = (h - target[i] * HIGH) * PRIME + target[i + BLOCK];
+                    }
+                    i += 1;
+                }
+            }
+            insert(out, target, pending, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the target rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(delta));
+            byte[] result = new byte[in.readInt()];
+            int pos = 0;
+            while (pos < result.length) {
+                int op = in.readByte();
+                int len;
+                if (op == COPY) {
+                    int off = in.readInt();
+                    len = in.readInt();
+                    System.arraycopy(base, off, result, pos, len);
+                } else {
+                    len = in.readInt();
+                    in.readFully(result, pos, len);
+                }
+                pos += len;
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+    }
+
+    /** Write an INSERT of DATA[FROM .. TO-1] to OUT, if it is not
+     *  empty. */
+    private static void insert(DataOutputStream out, byte[] data,
+                               int from, int to) throws IOException {
+        if (to > from) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /** The rolling hash of DATA[START .. START+BLOCK-1]. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Returns true iff the BLOCK bytes of A at AT and B at BT agree. */
+    private static boolean matches(byte[] a, int at, byte[] b, int bt) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (a[at + k] != b[bt + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.random;
+import static org.junit.Assert.*;
+
+/** Tests of Delta and of blobs stored as deltas.
+ *  @author Kevin Wang
+ */
+public class DeltaTest {
+
+    /**
+     * metadata directory of the blob store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns BASE with COUNT random edits drawn from RAND, each
+     *  replacing, inserting or deleting a few bytes. */
+    private static byte[] edit(Random rand, byte[] base, int count) {
+        byte[] result = base;
+        for (int k = 0; k < count; k += 1) {
+            int at = result.length == 0 ? 0 : rand.nextInt(result.length);
+            int len = Math.min(1 + rand.nextInt(20), result.length - at);
+            byte[] ins = random(rand, rand.nextInt(20));
+            byte[] next = new byte[result.length - len + ins.length];
+            System.arraycopy(result, 0, next, 0, at);
+            System.arraycopy(ins, 0, next, at, ins.length);
+            System.arraycopy(result, at + len, next, at + ins.length,
+                    result.length - at - len);
+            result = next;
+        }
+        return result;
+    }
+
+    /** Assert that the delta from BASE to TARGET rebuilds TARGET, and
+     *  return its length. */
+    private static int roundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta.length;
+    }
+
+    /** Empty and short inputs, shorter than a block, round-trip. */
+    @Test
+    public void shortInputs() {
+        Random rand = new Random(1);
+        byte[] empty = new byte[0];
+        roundTrip(empty, empty);
+        roundTrip(empty, random(rand, 100));
+        roundTrip(random(rand, 100), empty);
+        roundTrip(random(rand, 5), random(rand, 7));
+        byte[] small = random(rand, 15);
+        roundTrip(small, small);
+    }
+
+    /** Edited versions round-trip, and their deltas are much smaller
+     *  than they are. */
+    @Test
+    public void edits() {
+        Random rand = new Random(2);
+        for (int size : new int[] {16, 100, 4096, 100000}) {
+            byte[] base = random(rand, size);
+            byte[] target = edit(rand, base, 1 + size / 2000);
+            int len = roundTrip(base, target);
+            if (size >= 4096) {
+                assertTrue(len < target.length / 4);
+            }
+        }
+        byte[] base = random(rand, 10000);
+        assertTrue(roundTrip(base, base) < 20);
+        byte[] doubled = Arrays.copyOf(base, 2 * base.length);
+        System.arraycopy(base, 0, doubled, base.length, base.length);
+        assertTrue(roundTrip(base, doubled) < 40);
+    }
+
+    /** Unrelated inputs and repetitive inputs round-trip. */
+    @Test
+    public void unrelated() {
+        Random rand = new Random(3);
+        roundTrip(random(rand, 5000), random(rand, 6000));
+        byte[] zeros = new byte[5000];
+        byte[] ones = new byte[7000];
+        Arrays.fill(ones, (byte) 1);
+        roundTrip(zeros, ones);
+        roundTrip(zeros, new byte[9000]);
+    }
+
+    /** A truncated or damaged delta is rejected. */
+    @Test
+    public void corrupt() {
+        Random rand = new Random(4);
+        byte[] base = random(rand, 5000);
+        byte[] delta = Delta.create(base, edit(rand, base, 3));
+        for (byte[] bad : new byte[][] {
+                Arrays.copyOf(delta, delta.length - 1),
+                Arrays.copyOf(delta, 3), new byte[0]}) {
+            try {
+                Delta.apply(base, bad);
+                fail("accepted a truncated delta");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("corrupt delta", excp.getMessage());
+            }
+        }
+        try {
+            Delta.apply(new byte[10], delta);
+            fail("copied from beyond the base");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("corrupt delta", excp.getMessage());
+        }
+    }
+
+    /** A chain of versions, each stored against the one before, reads
+     *  back from a new store, loose and packed. */
+    @Test
+    public void storedChain() throws IOException {
+        Random rand = new Random(5);
+        BlobStore blobs = new BlobStore(new ObjectStore(tmp.getRoot()));
+        byte[][] versions = new byte[30][];
+        String[] ids = new String[versions.length];
+        versions[0] = random(rand, 20000);
+        for (int i = 0; i < versions.length; i += 1) {
+            if (i > 0) {
+                versions[i] = edit(rand, versions[i - 1], 3);
+            }
+            ids[i] = Utils.sha1(versions[i]);
+            blobs.write(ids[i], versions[i], i == 0 ? null : ids[i - 1]);
+        }
+        assertTrue(Utils.join(tmp.getRoot(), "blobs", ids[1]).length()
+                < versions[1].length / 10);
+        ObjectStore objects = new ObjectStore(tmp.getRoot());
+        for (int pass = 0; pass < 2; pass += 1) {
+            BlobStore reread = new BlobStore(objects);
+            for (int i = versions.length - 1; i >= 0; i -= 1) {
+                assertArrayEquals(versions[i], reread.read(ids[i]));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reread.copyTo(ids[i], out);
+                assertArrayEquals(versions[i], out.toByteArray());
+            }
+            objects.repack();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.rules.TemporaryFolder;
+
+/** A temporary directory for a test, used as a JUnit rule in place of a
+ *  TemporaryFolder, and the data tests fill it with.
+ *  @author Kevin Wang
+ */
+public class Fixtures extends TemporaryFolder {
+
+    /** Returns the file NAME, a path with "/" separators, below the
+     *  directory. */
+    File file(String name) {
+        return new File(getRoot(), name);
+    }
+
+    /** Set the contents of the file NAME below the directory to TEXT,
+     *  making the directories above it. */
+    void write(String name, String text) {
+        File f = file(name);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, text);
+    }
+
+    /** Returns the contents of the file NAME below the directory, or null
+     *  if it is absent. */
+    String read(String name) {
+        File f = file(name);
+        return f.isFile() ? Utils.readContentsAsString(f) : null;
+    }
+
+    /** Returns N random bytes drawn from RAND. */
+    static byte[] random(Random rand, int n) {
+        byte[] result = new byte[n];
+        rand.nextBytes(result);
+        return result;
+    }
+
+    /** Returns N random bytes drawn from a generator seeded with SEED. */
+    static byte[] random(long seed, int n) {
+        return random(new Random(seed), n);
+    }
+
+    /** Returns the contents of the Ith test object, which differ for
+     *  each I. */
+    static byte[] content(int i) {
+        return ("object " + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -8,6 +8,10 @@ package gitlet;
  */
 class GitletException extends RuntimeException {
 
+    /**
+     * serialization version.
+     */
+    private static final long serialVersionUID = 1L;
 
     /** A GitletException with no message. */
     GitletException() {
@@ -1,15 +1,47 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GitletRepo {
 
+    /**
+     * max commits held in memory.
+     */
+    private static final int COMMIT_CACHE_SIZE = 4096;
+    /**
+     * conflict opening marker.
+     */
+    private static final byte[] CONFLICT_HEAD =
+            "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /**
+     * conflict separator.
+     */
+    private static final byte[] CONFLICT_SEP =
+            "=======\n".getBytes(StandardCharsets.UTF_8);
+    /**
+     * conflict closing marker.
+     */
+    private static final byte[] CONFLICT_END =
+            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
     /**
      * current branch.
      */
@@ -19,26 +51,34 @@ public class GitletRepo {
      */
     private String head;
     /**
-     * commits.
+     * decoded commits.
      */
-    private HashMap<String, Commit> commits;
-    /**
-     * blobs.
-     */
-    private HashMap<String, Blob> blobs;
+    private final ObjectCache<Commit> commitCache =
+            new ObjectCache<>(COMMIT_CACHE_SIZE);
     /**
      * addition.
      */
-    private HashMap<String, String> addition;
+    private final Map<String, String> addition;
     /**
      * removal.
      */
-    private HashMap<String, String> removal;
+    private final Map<String, String> removal;
     /**
      * branches.
      */
     private ArrayList<Branch> branches;
 
+    /**
+     * contents written to state files since the last publish, or null
+     * for files to delete.
+     */
+    private final LinkedHashMap<File, byte[]> pending =
+        new LinkedHashMap<>();
+    /**
+     * contents of state files as last read or published.
+     */
+    private final HashMap<File, byte[]> onDisk = new HashMap<>();
+
     /**
      * cwd.
      */
@@ -55,15 +95,9 @@ public class GitletRepo {
     private final File stagingAreaFile = new File(
             gitlet.getPath() + "/staging");
     /**
-     * adding.
-     */
-    private final File addingStageFile = new File(
-            stagingAreaFile.getPath() + "/addition");
-    /**
-     * removing.
+     * staged changes.
      */
-    private final File removingStageFile = new File(
-            stagingAreaFile.getPath() + "/removal");
+    private final StagingArea staging = new StagingArea(stagingAreaFile);
     /**
      * blob.
      */
@@ -89,48 +123,179 @@ public class GitletRepo {
      */
     private final File headFile = new File(
             gitlet.getPath() + "/HEAD");
+    /**
+     * repository settings.
+     */
+    private final Config config = new Config(Utils.join(gitlet, "config"));
+    /**
+     * object database.
+     */
+    private final ObjectStore objects = new ObjectStore(gitlet);
+    /**
+     * file contents.
+     */
+    private final BlobStore blobStore = new BlobStore(objects,
+            config.getInt("core.compression", Blob.DEFAULT_LEVEL));
+    /**
+     * working files.
+     */
+    private final WorkTree workTree = new WorkTree(cwd,
+            Utils.join(gitlet, "watch"));
+    /**
+     * directory trees.
+     */
+    private final TreeStore trees = new TreeStore(objects);
+    /**
+     * stat cache of working-file hashes.
+     */
+    private final StatIndex statIndex = new StatIndex(
+            Utils.join(gitlet, "index"));
+    /**
+     * ancestry of all commits.
+     */
+    private final CommitGraph commitGraph = new CommitGraph(
+            Utils.join(gitlet, "commit-graph"));
+    /**
+     * commit messages.
+     */
+    private final MessageIndex messageIndex = new MessageIndex(
+            Utils.join(gitlet, "messages"));
+    /**
+     * publishes state-file writes atomically.
+     */
+    private final Journal journal = new Journal(gitlet);
+    /**
+     * working-tree writer.
+     */
+    private final CheckoutEngine checkoutEngine = new CheckoutEngine(
+            blobStore, statIndex, cwd, config.getInt("checkout.threads",
+                    Runtime.getRuntime().availableProcessors()));
 
-    @SuppressWarnings("unchecked")
     public GitletRepo() {
+        addition = staging.additions();
+        removal = staging.removals();
+        String hash = config.get("core.hash", Hasher.SHA1.name());
+        if (Hasher.forName(hash) == null) {
+            throw Utils.error("Bad value for core.hash: %s", hash);
+        }
+        Hasher.use(Hasher.forName(hash));
+        reload();
+    }
 
+    /** Read the current branch, head, staging area and branches again
+     *  from the repository, dropping the copies held in memory. */
+    public void reload() {
         if (new File(cwd.getPath() + "/.gitlet").exists()) {
-            currentBranch = Utils.readObject(
-                    currBranchFile, Branch.class).getName();
-            head = Utils.readContentsAsString(headFile);
-            commits = new HashMap<>();
-            blobs = new HashMap<>();
-
-            addition = (HashMap<String, String>)
-                    (Utils.readObject(addingStageFile, HashMap.class));
-            removal = (HashMap<String, String>)
-                    (Utils.readObject(removingStageFile, HashMap.class));
+            journal.recover(durable());
+            currentBranch = Branch.decode(
+                    readState(currBranchFile)).getName();
+            head = new String(readState(headFile), StandardCharsets.UTF_8);
+
+            staging.load();
             branches = new ArrayList<>();
 
-            for (String bFileName : Utils.plainFilenamesIn(commitsDir)) {
-                File f = Utils.join(commitsDir, bFileName);
-                commits.put(
-                        Utils.readObject(f, Commit.class).getName(),
-                        Utils.readObject(f, Commit.class));
+            for (String bFileName : branchFiles()) {
+                File f = Utils.join(
+                        branchesDir, bFileName);
+                branches.add(
+                        Branch.decode(readState(f)));
             }
+        }
+    }
 
-            for (String bFileName : Utils.plainFilenamesIn(blobsDir)) {
+    /** Publish the writes to the head, current-branch, branch and
+     *  staging files made since the last publish, all at once: first make
+     *  every object written since durable, then commit the writes that
+     *  change a file through the journal.  Staging changes made alone are
+     *  appended to the staging log instead. */
+    public void flushWrites() {
+        LinkedHashMap<File, byte[]> changes = new LinkedHashMap<>();
+        for (Map.Entry<File, byte[]> e : pending.entrySet()) {
+            File f = e.getKey();
+            byte[] contents = e.getValue();
+            if (contents == null ? f.exists()
+                : !Arrays.equals(contents, onDisk.get(f))) {
+                changes.put(f, contents);
+            }
+        }
+        boolean sync = durable();
+        objects.sync(sync);
+        if (staging.changed()) {
+            if (changes.isEmpty() && staging.canAppend()) {
+                staging.append(sync);
+            } else {
+                changes.putAll(staging.compact());
+            }
+        }
+        journal.commit(changes, sync);
+        for (Map.Entry<File, byte[]> e : pending.entrySet()) {
+            onDisk.put(e.getKey(), e.getValue());
+        }
+        pending.clear();
+    }
+
+    /** Returns true unless config core.fsync is false. */
+    private boolean durable() {
+        return !config.get("core.fsync", "true").equals("false");
+    }
+
+    /** Set the contents of the state file FILE to CONTENTS, a String or
+     *  byte array, when writes are next published. */
+    private void writeState(File file, Object contents) {
+        byte[] bytes = contents instanceof String
+            ? ((String) contents).getBytes(StandardCharsets.UTF_8)
+            : (byte[]) contents;
+        pending.put(file, bytes);
+    }
+
+    /** Delete the state file FILE when writes are next published. */
+    private void deleteState(File file) {
+        pending.put(file, null);
+    }
 
-                File f = Utils.join(blobsDir, bFileName);
-                blobs.put(
-                        Utils.readObject(f, Blob.class).getSha1(),
-                        Utils.readObject(f, Blob.class));
+    /** Returns the contents of the state file FILE, including writes
+     *  held back. */
+    private byte[] readState(File file) {
+        if (pending.containsKey(file)) {
+            byte[] result = pending.get(file);
+            if (result == null) {
+                throw new IllegalArgumentException("no such file " + file);
             }
+            return result;
+        }
+        byte[] result = Utils.readContents(file);
+        onDisk.put(file, result);
+        return result;
+    }
 
-            for (String bFileName : Utils.plainFilenamesIn(branchesDir)) {
-                File f = Utils.join(
-                        branchesDir, bFileName);
-                branches.add(
-                        Utils.readObject(f, Branch.class));
+    /** Returns the names of the branch files, sorted, including writes
+     *  held back. */
+    private List<String> branchFiles() {
+        TreeSet<String> result =
+            new TreeSet<>(Utils.plainFilenamesIn(branchesDir));
+        for (Map.Entry<File, byte[]> e : pending.entrySet()) {
+            if (!e.getKey().getParentFile().equals(branchesDir)) {
+                continue;
+            } else if (e.getValue() == null) {
+                result.remove(e.getKey().getName());
+            } else {
+                result.add(e.getKey().getName());
             }
         }
+        return new ArrayList<>(result);
     }
 
-    public void init() throws IOException {
+    public void close() {
+        flushWrites();
+        if (gitlet.exists()) {
+            statIndex.save();
+            workTree.save();
+        }
+    }
+
+    /** Create a repository whose object ids are computed with the hash
+     *  algorithm called HASH in the config. */
+    public void init(String hash) throws IOException {
         if (new File(
                 cwd.getPath() + "/.gitlet/").exists()) {
             System.out.println(
@@ -138,11 +303,16 @@ public class GitletRepo {
                     + " already exists in the current directory.");
             return;
         }
+        Hasher hasher = Hasher.forName(hash);
+        if (hasher == null) {
+            System.out.println("No such hash algorithm.");
+            return;
+        }
 
         gitlet.mkdir();
+        config.set("core.hash", hasher.name());
+        Hasher.use(hasher);
         stagingAreaFile.mkdir();
-        addingStageFile.createNewFile();
-        removingStageFile.createNewFile();
         blobsDir.mkdir();
         commitsDir.mkdir();
         branchesDir.mkdir();
@@ -151,85 +321,83 @@ public class GitletRepo {
 
         Commit initial = new Commit(
                 "initial commit",
-                "", new HashMap<>(),
+                "", trees.write(new HashMap<>()),
                 true);
+        messageIndex.create();
         serializeCommitToFile(initial);
 
         Branch master = new Branch(
                 "master", initial.getName());
-        Utils.writeObject(
-                currBranchFile, master);
-        Utils.writeObject(
-                Utils.join(branchesDir, master.getName()), master);
+        writeState(
+                currBranchFile, master.encode());
+        writeState(
+                Utils.join(branchesDir, master.getName()), master.encode());
 
-        blobs = new HashMap<>();
         head = initial.getName();
-        Utils.writeContents(headFile, head);
+        writeState(headFile, head);
 
-        addition = new HashMap<>();
-        removal = new HashMap<>();
-        Utils.writeObject(addingStageFile, addition);
-        Utils.writeObject(removingStageFile, removal);
+        staging.clear();
 
         branches = new ArrayList<>();
         branches.add(master);
     }
 
     private void serializeCommitToFile(Commit commit) {
-        String sha1 = commit.getName();
-        Utils.writeObject(
-                new File(".gitlet/commits/" + sha1),
-                commit);
+        objects.write(ObjectStore.COMMIT, commit.getName(),
+                commit.encode());
+        commitGraph.add(commit.getName(), id ->
+                id.equals(commit.getName()) ? commit : getCommit(id));
+        messageIndex.add(commit.getName(), commit.getMessage());
     }
 
-    public void add(String filename) {
-
-        if (!new File(filename).exists()) {
-            System.out.println("File does not exist.");
-            return;
-        }
-
-        String content = Utils.readContentsAsString(new File(filename));
-        String sha1 = Utils.sha1(content);
-
-        if (removal.getOrDefault(filename, "troll").equals(sha1)) {
-            removal.remove(filename);
-            Utils.writeObject(removingStageFile, removal);
+    public void add(String... paths) {
+        ArrayList<String> filenames = new ArrayList<>();
+        for (String path : paths) {
+            File f = cwd.toPath().resolve(path).toFile();
+            String rel = workTree.relative(path);
+            if (rel == null || !f.exists()) {
+                System.out.println("File does not exist.");
+                return;
+            } else if (f.isDirectory()) {
+                filenames.addAll(workTree.files(rel));
+            } else {
+                filenames.add(rel);
+            }
         }
 
-        boolean altered = false;
-        Commit c = getCommit(head);
-        if (c.getBlobs().getOrDefault(filename, "troll").equals(sha1)) {
-            altered = false;
-        } else if (addition.containsKey(filename)) {
-            if (!addition.get(filename).equals(sha1)) {
-                altered = true;
+        HashMap<String, String> tracked = blobsOf(getCommit(head));
+        ConcurrentHashMap<String, String> hashes = new ConcurrentHashMap<>();
+        filenames.parallelStream().forEach(filename -> {
+            File file = Utils.join(cwd, filename);
+            String sha1 = workingSha1(filename);
+            hashes.put(filename, sha1);
+            if (!tracked.getOrDefault(filename, "troll").equals(sha1)
+                    && !blobStore.contains(sha1)) {
+                blobStore.write(sha1, file, tracked.get(filename));
             }
-        } else {
-            altered = true;
-        }
+        });
 
-        if (altered) {
-            Blob newBlob = new Blob(filename, content, sha1);
-            addition.put(filename, newBlob.getSha1());
-            blobs.put(newBlob.getSha1(), newBlob);
+        for (String filename : filenames) {
+            String sha1 = hashes.get(filename);
+            if (removal.getOrDefault(filename, "troll").equals(sha1)) {
+                staging.unremove(filename);
+            }
 
-            Utils.writeObject(Utils.join(blobsDir, sha1), newBlob);
-            Utils.writeObject(addingStageFile, addition);
-        } else {
-            addition.remove(filename);
+            if (tracked.getOrDefault(filename, "troll").equals(sha1)) {
+                staging.unadd(filename);
+            } else {
+                staging.add(filename, sha1);
+            }
         }
     }
 
     public void rm(String filename) {
         Commit c = getCommit(head);
-        if (c.getBlobs().containsKey(filename)) {
-            Utils.restrictedDelete(filename);
-            removal.put(filename, c.getBlobs().get(filename));
-            Utils.writeObject(removingStageFile, removal);
+        if (blobsOf(c).containsKey(filename)) {
+            workTree.delete(filename);
+            staging.remove(filename, blobsOf(c).get(filename));
         } else if (addition.containsKey(filename)) {
-            addition.remove(filename);
-            Utils.writeObject(addingStageFile, addition);
+            staging.unadd(filename);
         } else {
             System.out.println("No reason to remove the file.");
         }
@@ -247,69 +415,127 @@ public class GitletRepo {
         }
 
         Commit oldCommit = getCommit(head);
-        HashMap<String, String> currentBlobs = oldCommit.getBlobs();
-
-        for (String key : addition.keySet()) {
-            currentBlobs.put(key, addition.get(key));
-        }
+        HashMap<String, String> changes = new HashMap<>(addition);
 
         for (String key : removal.keySet()) {
-            currentBlobs.remove(key);
+            changes.put(key, null);
         }
 
-        Commit newCommit = new Commit(message, head, currentBlobs);
+        Commit newCommit = new Commit(message, head,
+                trees.update(treeOf(oldCommit), changes));
         serializeCommitToFile(newCommit);
 
-        addition = new HashMap<>();
-        Utils.writeObject(addingStageFile, addition);
-
-        removal = new HashMap<>();
-        Utils.writeObject(removingStageFile, removal);
+        staging.clear();
 
         head = newCommit.getName();
-        Utils.writeContents(headFile, head);
+        writeState(headFile, head);
 
-        commits.put(newCommit.getName(), newCommit);
+        commitCache.put(newCommit.getName(), newCommit);
 
         Branch b = getBranch(currentBranch);
         b.setLastCommit(head);
-        Utils.writeObject(Utils.join(branchesDir, b.getName()), b);
+        writeState(Utils.join(branchesDir, b.getName()), b.encode());
     }
 
     private Commit getCommit(String name) {
-        return Utils.readObject(
-                new File(".gitlet/commits/" + name),
-                Commit.class);
+        Commit c = commitCache.get(name);
+        if (c == null) {
+            c = Commit.decode(name, objects.read(ObjectStore.COMMIT, name));
+            commitCache.put(name, c);
+        }
+        return c;
+    }
+
+    private void writeBlob(String sha1, String filename) {
+        workTree.written(filename);
+        checkoutEngine.write(filename, sha1);
     }
 
-    public void log() {
-        String curr = head;
-        while (curr != "") {
-            Commit c = getCommit(curr);
-            System.out.println(c);
-            curr = c.getParent();
+    /** Returns the blob id of the working file FILENAME, without reading
+     *  it if the working tree or the stat index knows it already. */
+    private String workingSha1(String filename) {
+        String sha1 = workTree.knownSha1(filename);
+        if (sha1 == null) {
+            sha1 = statIndex.sha1(filename, Utils.join(cwd, filename));
+            workTree.found(filename, sha1);
         }
+        return sha1;
     }
 
-    public void globalLog() {
-        for (String sha1 : commits.keySet()) {
-            System.out.println(getCommit(sha1));
+    private List<String> commitIds() {
+        return objects.ids(ObjectStore.COMMIT);
+    }
+
+    /** Print up to LIMIT commits on the first-parent history of the
+     *  head, newest first, stopping at the first made before SINCE (in ms
+     *  since the epoch).  Commit details come from the commit graph. */
+    public void log(int limit, long since) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        int i = commitGraph.add(head, this::getCommit);
+        for (int n = 0; i >= 0 && n < limit && commitGraph.time(i) >= since;
+             n += 1) {
+            printCommit(out, i);
+            i = commitGraph.parent1(i);
         }
+        out.flush();
     }
 
-    public void find(String message) {
-        boolean found = false;
-        for (String sha1 : commits.keySet()) {
-            Commit c = getCommit(sha1);
-            if (c.getMessage().equals(message)) {
-                System.out.println(c.getName());
-                found = true;
+    /** Print up to LIMIT of all commits made no earlier than SINCE (in ms
+     *  since the epoch), in order of id. */
+    public void globalLog(int limit, long since) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        int n = 0;
+        for (String sha1 : commitIds()) {
+            if (n >= limit) {
+                break;
+            }
+            int i = commitGraph.add(sha1, this::getCommit);
+            if (commitGraph.time(i) >= since) {
+                printCommit(out, i);
+                n += 1;
             }
         }
+        out.flush();
+    }
+
+    private void printCommit(PrintWriter out, int i) {
+        out.print("===\ncommit " + commitGraph.id(i) + "\n"
+                + commitGraph.timestamp(i) + "\n"
+                + commitGraph.message(i) + "\n\n");
+    }
+
+    public void find(String message) {
+        printMatches(messages().find(message));
+    }
+
+    /** Print the ids of commits whose messages contain every word of
+     *  QUERY. */
+    public void grep(String query) {
+        printMatches(messages().grep(query));
+    }
 
-        if (!found) {
+    private void printMatches(List<String> ids) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        for (String id : ids) {
+            System.out.println(id);
+        }
+    }
+
+    /** Returns the message index, first building it from the commits
+     *  if this repository does not have one yet. */
+    private MessageIndex messages() {
+        if (!messageIndex.exists()) {
+            LinkedHashMap<String, String> all = new LinkedHashMap<>();
+            for (String sha1 : commitIds()) {
+                all.put(sha1, getCommit(sha1).getMessage());
+            }
+            messageIndex.rebuild(all);
+        }
+        return messageIndex;
     }
 
     public void status() {
@@ -355,26 +581,17 @@ public class GitletRepo {
 
     private void displayExtraCredit() {
         Commit c = getCommit(head);
+        List<String> cwdFiles = workTree.files();
+        HashSet<String> inCWD = new HashSet<>(cwdFiles);
         System.out.println("=== Modifications Not Staged For Commit ===");
-        for (String f : c.getBlobs().keySet()) {
+        for (String f : blobsOf(c).keySet()) {
             if (!addition.containsKey(f) && !removal.containsKey(f)) {
-                boolean inCWD = Utils.plainFilenamesIn(cwd).contains(f);
-
-                if (!inCWD) {
+                if (!inCWD.contains(f)) {
                     System.out.println(f + " (deleted)");
                 } else {
-                    for (String s : Utils.plainFilenamesIn(cwd)) {
-                        if (s.equals(f)) {
-                            String currFC = Utils.readContentsAsString(
-                                    Utils.join(cwd, s));
-                            if (!Utils.sha1(currFC)
-                                    .equals(c.getBlobs()
-                                            .get(f))) {
-                                if (!addition.containsKey(f)) {
-                                    System.out.println(f + " (modified)");
-                                }
-                            }
-                        }
+                    String currFC = workingSha1(f);
+                    if (!currFC.equals(blobsOf(c).get(f))) {
+                        System.out.println(f + " (modified)");
                     }
                 }
             }
@@ -384,8 +601,8 @@ public class GitletRepo {
         System.out.println("=== Untracked Files ===");
         ArrayList<String> untracked = new ArrayList<>();
 
-        for (String f : Utils.plainFilenamesIn(cwd)) {
-            if (!c.getBlobs().containsKey(f)
+        for (String f : cwdFiles) {
+            if (!blobsOf(c).containsKey(f)
                     && !addition.containsKey(f)
                     && !removal.containsKey(f)) {
                 untracked.add(f);
@@ -400,16 +617,15 @@ public class GitletRepo {
 
     public void checkoutFile(String filename) {
         Commit c = getCommit(head);
-        HashMap<String, String> cBlobs = c.getBlobs();
+        HashMap<String, String> cBlobs = blobsOf(c);
 
         boolean fileExists = false;
-        for (Map.Entry entry : cBlobs.entrySet()) {
-            String key = (String) entry.getKey();
+        for (Map.Entry<String, String> entry : cBlobs.entrySet()) {
+            String key = entry.getKey();
             String sha1 = cBlobs.get(key);
 
             if (key.equals(filename)) {
-                Blob b = blobs.get(sha1);
-                Utils.writeContents(Utils.join(cwd, filename), b.getContents());
+                writeBlob(sha1, filename);
                 fileExists = true;
             }
         }
@@ -420,38 +636,34 @@ public class GitletRepo {
     }
 
     public void checkoutCommit(String commitID, String filename) {
-        boolean found = false;
-        for (String sha1 : commits.keySet()) {
-            if (sha1.contains(commitID)) {
-                commitID = sha1;
-                found = true;
-            }
-        }
-
-        if (!found) {
-            System.out.println("No commit with that id exists.");
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
             return;
         }
 
-
         Commit c = getCommit(commitID);
-        if (!c.getBlobs().containsKey(filename)) {
+        if (!blobsOf(c).containsKey(filename)) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        String sha1 = c.getBlobs().get(filename);
-        Utils.writeContents(new File(filename), blobs.get(sha1).getContents());
+        String sha1 = blobsOf(c).get(filename);
+        writeBlob(sha1, filename);
     }
 
-    private boolean commitExists(String commitID) {
-        for (String fname : Utils.plainFilenamesIn(commitsDir)) {
-            if (fname.contains(commitID)) {
-                return true;
-            }
+    /** Returns the full id of the one commit whose id begins with PREFIX,
+     *  or null, after saying why, if there is no such commit or more than
+     *  one. */
+    private String resolveCommit(String prefix) {
+        List<String> matches = objects.resolve(ObjectStore.COMMIT, prefix, 2);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (matches.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous.");
+            return null;
         }
-
-        return false;
+        return matches.get(0);
     }
 
     public void checkoutBranch(String branch) {
@@ -470,42 +682,107 @@ public class GitletRepo {
         Commit newHead = getCommit(b.getLastCommit());
         Commit currHead = getCommit(head);
 
-        HashMap<String, String> newBlobs = newHead.getBlobs();
+        if (!switchTree(currHead, newHead)) {
+            return;
+        }
+
+        staging.clear();
 
-        for (String filename : Utils.plainFilenamesIn(cwd)) {
-            if (newBlobs.containsKey(filename)
-                    && !currHead.getBlobs().containsKey(filename)) {
+
+        currentBranch = branch;
+        head = newHead.getName();
+        writeState(headFile, head);
+        writeState(currBranchFile, b.encode());
+    }
+
+    public void config(String key, String value) {
+        if (value == null) {
+            System.out.println(config.get(key, ""));
+        } else if (Config.FIXED.contains(key)) {
+            System.out.println("The hash algorithm of a repository"
+                    + " cannot be changed.");
+        } else {
+            config.set(key, value);
+        }
+    }
+
+    public void repack() {
+        int moved = objects.repack();
+        System.out.println("Packed " + moved + " objects.");
+    }
+
+    /** Monitor the working tree for changes until killed, so that other
+     *  commands need not scan it. */
+    public void watch() throws IOException {
+        if (!gitlet.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        workTree.watcher().run();
+    }
+
+    private boolean switchTree(Commit currHead, Commit newHead) {
+        HashMap<String, String[]> changes = diff(currHead, newHead);
+        HashSet<String> inCWD = new HashSet<>(workTree.files());
+
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            if (e.getValue()[0] == null && inCWD.contains(e.getKey())) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
-                return;
+                return false;
             }
         }
 
-        for (String filename : Utils.plainFilenamesIn(cwd)) {
-            if (currHead.getBlobs().containsKey(filename)
-                    && !newBlobs.containsKey(filename)) {
-                Utils.restrictedDelete(
-                        Utils.join(cwd, filename));
+        HashMap<String, String> changed = new HashMap<>();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String filename = e.getKey();
+            String sha1 = e.getValue()[1];
+            if (sha1 != null) {
+                changed.put(filename, sha1);
+            } else if (inCWD.contains(filename)) {
+                workTree.delete(filename);
+                statIndex.remove(filename);
             }
         }
 
-        for (String filename : newBlobs.keySet()) {
-            Utils.writeContents(
-                    new File(filename),
-                    blobs.get(newBlobs.get(filename)).getContents());
+        for (Map.Entry<String, String> e : blobsOf(newHead).entrySet()) {
+            String filename = e.getKey();
+            String sha1 = e.getValue();
+            if (!changes.containsKey(filename)
+                    && (!inCWD.contains(filename)
+                    || !sha1.equals(workingSha1(filename)))) {
+                changed.put(filename, sha1);
+            }
         }
+        for (String filename : changed.keySet()) {
+            workTree.written(filename);
+        }
+        checkoutEngine.write(changed);
+        return true;
+    }
 
-        addition = new HashMap<>();
-        Utils.writeObject(addingStageFile, addition);
-
-        removal = new HashMap<>();
-        Utils.writeObject(removingStageFile, removal);
+    /** Returns the files of commit C, as a map from path to blob id. */
+    private HashMap<String, String> blobsOf(Commit c) {
+        if (c.getBlobs() == null) {
+            c.cacheBlobs(trees.flatten(c.getTree()));
+        }
+        return c.getBlobs();
+    }
 
+    /** Returns the id of the root tree of commit C, storing one for
+     *  commits that predate trees. */
+    private String treeOf(Commit c) {
+        return c.getTree() != null ? c.getTree() : trees.write(c.getBlobs());
+    }
 
-        currentBranch = branch;
-        head = newHead.getName();
-        Utils.writeContents(headFile, head);
-        Utils.writeObject(currBranchFile, b);
+    /** Returns the files that differ between commits A and B, each mapped
+     *  to its blob ids in A and B (null where absent).  Subtrees the two
+     *  commits share are not read. */
+    private HashMap<String, String[]> diff(Commit a, Commit b) {
+        if (a.getTree() != null && b.getTree() != null) {
+            return trees.diff(a.getTree(), b.getTree());
+        }
+        return TreeStore.diff(blobsOf(a), blobsOf(b));
     }
 
     private Branch getBranch(String branch) {
@@ -536,7 +813,7 @@ public class GitletRepo {
 
         Branch b = new Branch(name, head);
         branches.add(b);
-        Utils.writeObject(Utils.join(branchesDir, b.getName()), b);
+        writeState(Utils.join(branchesDir, b.getName()), b.encode());
     }
 
     public void removeBranch(String name) {
@@ -547,7 +824,8 @@ public class GitletRepo {
 
         for (Branch b : branches) {
             if (b.getName().equals(name)) {
-                Utils.join(branchesDir, name).delete();
+                branches.remove(b);
+                deleteState(Utils.join(branchesDir, name));
                 return;
             }
         }
@@ -557,52 +835,26 @@ public class GitletRepo {
     }
 
     public void reset(String commitID) {
-        if (!commitExists(commitID)) {
-            System.out.println("No commit with that id exists.");
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
             return;
         }
 
         Commit currHead = getCommit(head);
         Commit newHead = getCommit(commitID);
 
-        for (String filename : Utils.plainFilenamesIn(cwd)) {
-            if (newHead.getBlobs().containsKey(filename)
-                    && !currHead.getBlobs().containsKey(filename)) {
-                System.out.println("There is an untracked file"
-                        + " in the way; delete it, "
-                        + "or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String filename : Utils.plainFilenamesIn(cwd)) {
-            if (currHead.getBlobs().containsKey(filename)
-                    && !newHead.getBlobs().containsKey(filename)) {
-                Utils.restrictedDelete(
-                        Utils.join(cwd, filename));
-            }
-        }
-
-        for (String filename : newHead.getBlobs().keySet()) {
-            Utils.writeContents(
-                    new File(filename),
-                    blobs.get(newHead.getBlobs()
-                            .get(filename)).getContents());
+        if (!switchTree(currHead, newHead)) {
+            return;
         }
 
-
-        addition = new HashMap<>();
-        Utils.writeObject(addingStageFile, addition);
-
-        removal = new HashMap<>();
-        Utils.writeObject(removingStageFile, removal);
+        staging.clear();
 
         head = newHead.getName();
-        Utils.writeContents(headFile, head);
+        writeState(headFile, head);
 
         Branch b = getBranch(currentBranch);
         b.setLastCommit(head);
-        Utils.writeObject(Utils.join(branchesDir, b.getName()), b);
+        writeState(Utils.join(branchesDir, b.getName()), b.encode());
     }
 
     public void merge(String branchName) {
@@ -614,19 +866,19 @@ public class GitletRepo {
         Commit currH = getCommit(head);
         Commit givenH = getCommit(givenBr.getLastCommit());
         HashMap<String, String> newBlobs = new HashMap<>();
-        HashMap<String, String> currBlobs = currH.getBlobs();
-        HashMap<String, String> givenBlobs = givenH.getBlobs();
-        for (String filename : Utils.plainFilenamesIn(cwd)) {
+        HashMap<String, String> currBlobs = blobsOf(currH);
+        HashMap<String, String> givenBlobs = blobsOf(givenH);
+        for (String filename : workTree.files()) {
             if (checkUntracked(givenBlobs, currBlobs, filename)) {
                 return;
             }
         }
         Commit splitPoint = findSplitPoint(branchName);
-        HashMap<String, String> splitBlobs = splitPoint.getBlobs();
+        HashMap<String, String> splitBlobs = blobsOf(splitPoint);
         boolean mergeConflict = false;
         if (splitPoint.getName()
                 .equals(givenH.getName())) {
-            newBlobs = currH.getBlobs();
+            newBlobs = blobsOf(currH);
             System.out.println("Given branch is"
                     + " an ancestor of the current branch.");
         } else if (speedrunMerge(splitPoint,
@@ -634,7 +886,7 @@ public class GitletRepo {
                 newBlobs, currBr)) {
             head = currH.getName();
         } else {
-            for (String filename : Utils.plainFilenamesIn(cwd)) {
+            for (String filename : workTree.files()) {
                 String splitB = splitBlobs.getOrDefault
                         (filename, "s");
                 String currB = currBlobs.getOrDefault
@@ -644,10 +896,8 @@ public class GitletRepo {
                 if (causesMergeConflict(splitB, currB, givenB)) {
                     mergeConflict = true;
                     displayMergeConflict(givenB, currB, filename);
-                    newBlobs.put(filename,
-                            Utils.sha1(
-                                    Utils.readContentsAsString(
-                                            new File(filename))));
+                    newBlobs.put(filename, statIndex.sha1(filename,
+                            Utils.join(cwd, filename)));
                 } else {
                     updateNewBlobs(splitB, currB,
                             givenB, filename, newBlobs);
@@ -663,7 +913,10 @@ public class GitletRepo {
             System.out.println("Encountered a merge conflict.");
         }
         serializeCommitToFile(newCommit);
-        Utils.writeContents(headFile, head);
+        writeState(headFile, head);
+        currBr.setLastCommit(head);
+        writeState(Utils.join(branchesDir, currBr.getName()),
+                currBr.encode());
     }
 
     private Commit createNewMCommit(Branch givenBr, Branch currBr,
@@ -672,7 +925,7 @@ public class GitletRepo {
         return new Commit("Merged " + givenBr.getName()
                 + " into " + currBr.getName()
                 + ".", currH.getName(),
-                newBlobs);
+                trees.write(newBlobs));
     }
 
     private boolean checkUntracked(HashMap<String, String> givenBlobs,
@@ -704,9 +957,7 @@ public class GitletRepo {
         } else if (!splitB.equals(givenB) && !givenB.equals("g")) {
             if (splitB.equals(currB)) {
                 newBlobs.put(filename, givenB);
-                Utils.writeContents(
-                        Utils.join(cwd, filename),
-                        blobs.get(givenB).getContents());
+                writeBlob(givenB, filename);
             } else if (!splitB.equals(currB)) {
                 if (currB.equals(givenB)) {
                     newBlobs.put(filename, currB);
@@ -718,7 +969,9 @@ public class GitletRepo {
             }
         } else if (!splitB.equals("s")) {
             if (givenB.equals("g")) {
-                Utils.restrictedDelete(Utils.join(cwd, filename));
+                workTree.delete(filename);
+            } else if (currB.equals(splitB)) {
+                newBlobs.put(filename, currB);
             }
         }
     }
@@ -726,58 +979,37 @@ public class GitletRepo {
     private void addMissing(HashMap<String, String> givenBlobs,
                             HashMap<String, String> splitBlobs,
                             HashMap<String, String> newBlobs) {
+        HashSet<String> inCWD = new HashSet<>(workTree.files());
         for (String filename : givenBlobs.keySet()) {
             String splitB = splitBlobs.getOrDefault(filename, "s");
             String givenB = givenBlobs.get(filename);
 
             if (splitB.equals("s")
-                    && !Utils.plainFilenamesIn(cwd)
-                    .contains(filename)) {
+                    && !inCWD.contains(filename)) {
                 newBlobs.put(filename, givenB);
-                Utils.writeContents(
-                        Utils.join(
-                                cwd, filename),
-                        blobs.get(givenB).getContents());
+                writeBlob(givenB, filename);
             }
         }
     }
 
     private void displayMergeConflict(String givenB, String currB,
                                       String filename) {
-        if (!givenB.equals("g")
-                && !currB.equals("c")) {
-            String s = "";
-            s += "<<<<<<< HEAD" + "\n";
-            s += Utils.readObject(
-                    Utils.join(
-                            blobsDir, currB),
-                    Blob.class).getContents();
-            s += "=======" + "\n";
-            s += Utils.readObject(
-                    Utils.join(
-                            blobsDir, givenB),
-                    Blob.class).getContents();
-            s += ">>>>>>>" + "\n";
-            Utils.writeContents(Utils.join(cwd, filename), s);
-        } else if (!currB.equals("c")) {
-            String s = "";
-            s += "<<<<<<< HEAD" + "\n";
-            s += Utils.readObject(
-                    Utils.join(blobsDir,
-                            currB), Blob.class).getContents();
-            s += "=======" + "\n";
-            s += ">>>>>>>" + "\n";
-            Utils.writeContents(
-                    Utils.join(cwd, filename), s);
-        } else {
-            String s = "";
-            s += "<<<<<<< HEAD" + "\n";
-            s += "=======" + "\n";
-            s += Utils.readObject(
-                    Utils.join(blobsDir, givenB), Blob.class).getContents();
-            s += ">>>>>>>" + "\n";
-            Utils.writeContents(
-                    Utils.join(cwd, filename), s);
+        File target = Utils.join(cwd, filename);
+        target.getParentFile().mkdirs();
+        workTree.written(filename);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(target.toPath()))) {
+            out.write(CONFLICT_HEAD);
+            if (!currB.equals("c")) {
+                blobStore.copyTo(currB, out);
+            }
+            out.write(CONFLICT_SEP);
+            if (!givenB.equals("g")) {
+                blobStore.copyTo(givenB, out);
+            }
+            out.write(CONFLICT_END);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
@@ -788,11 +1020,11 @@ public class GitletRepo {
         if (splitPoint.getName().equals(head)) {
             head = givenHead.getName();
             currBranch.setLastCommit(head);
-            newBlobs = givenHead.getBlobs();
+            newBlobs = blobsOf(givenHead);
 
-            for (String filename : Utils.plainFilenamesIn(cwd)) {
+            for (String filename : workTree.files()) {
                 if (!newBlobs.containsKey(filename)) {
-                    Utils.restrictedDelete(Utils.join(cwd, filename));
+                    workTree.delete(filename);
                 }
             }
 
@@ -836,55 +1068,9 @@ public class GitletRepo {
 
     private Commit findSplitPoint(String branchName) {
         Branch givenB = getBranch(branchName);
-        Commit currHead = getCommit(head);
-        Commit givenHead = getCommit(givenB.getLastCommit());
-
-        HashSet<String> currentParents = new HashSet<>();
-        String currCommitID = currHead.getName();
-        ArrayList<String> Q = new ArrayList<>();
-        Q.add(currCommitID);
-        while (!Q.isEmpty()) {
-            currCommitID = Q.remove(0);
-            if (currCommitID.equals("")) {
-                continue;
-            }
-            currentParents.add(currCommitID);
-
-            Commit tempCommit = getCommit(currCommitID);
-            Q.add(tempCommit.getParent());
-            Q.add(tempCommit.getSecondParent());
-        }
-
-        String givenCommitID = givenHead.getName();
-        Q = new ArrayList<>();
-        Q.add(givenCommitID);
-        String latestCommonAncestor = "";
-        while (!Q.isEmpty()) {
-            givenCommitID = Q.remove(0);
-            if (givenCommitID.equals("")) {
-                continue;
-            }
-            if (currentParents.contains(givenCommitID)) {
-                Commit tempCommit = getCommit(givenCommitID);
-                if (latestCommonAncestor.equals("")) {
-                    latestCommonAncestor = givenCommitID;
-                } else if (tempCommit.getDate()
-                        .compareTo(getCommit(latestCommonAncestor)
-                                .getDate()) > 0) {
-                    latestCommonAncestor = givenCommitID;
-                }
-            }
-
-            Commit tempCommit = getCommit(givenCommitID);
-            Q.add(tempCommit.getParent());
-            Q.add(tempCommit.getSecondParent());
-        }
-
-        if (!latestCommonAncestor.equals("")) {
-            return getCommit(latestCommonAncestor);
-        } else {
-            return null;
-        }
+        String base = commitGraph.mergeBase(head, givenB.getLastCommit(),
+                this::getCommit);
+        return base == null ? null : getCommit(base);
     }
 
 
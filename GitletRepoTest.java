@@ -0,0 +1,376 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of gitlet commands run on a repository in a temporary directory.
+ *  @author Kevin Wang
+ */
+public class GitletRepoTest {
+
+    /**
+     * directory of the repository.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /**
+     * user.dir before the test.
+     */
+    private String userDir;
+
+    /** Make the temporary directory the current one. */
+    @Before
+    public void enter() {
+        userDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", tmp.getRoot().getPath());
+    }
+
+    /** Restore the current directory. */
+    @After
+    public void leave() {
+        System.setProperty("user.dir", userDir);
+    }
+
+    /** Run the command ARGS on the repository, as the gitlet program
+     *  would, and return its output. */
+    static String run(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            GitletRepo repo = new GitletRepo();
+            Main.run(repo, args);
+            repo.close();
+        } finally {
+            System.setOut(stdout);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the section of the output of status headed TITLE. */
+    static String section(String status, String title) {
+        String head = "=== " + title + " ===\n";
+        int start = status.indexOf(head) + head.length();
+        int end = status.indexOf("\n\n", start - 1);
+        return end < start ? "" : status.substring(start, end);
+    }
+
+    /** add finds its paths in the repository, not in the directory the
+     *  JVM was started from. */
+    @Test
+    public void addResolvesAgainstRepository() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        tmp.write("d/b.txt", "b");
+        assertEquals("", run("add", "a.txt", "d/b.txt"));
+        assertEquals("a.txt\nd/b.txt",
+                section(run("status"), "Staged Files"));
+    }
+
+    /** add takes many paths and directories at once, staging every file
+     *  below them, and stages nothing if any path is missing. */
+    @Test
+    public void addManyPaths() throws IOException {
+        run("init");
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i += 1) {
+            String name = "src/pkg" + (i % 5) + "/f" + i + ".txt";
+            tmp.write(name, "file " + i);
+            expected.add(name);
+        }
+        tmp.write("top.txt", "top");
+        expected.add("top.txt");
+        Collections.sort(expected);
+        assertEquals("File does not exist.\n",
+                run("add", "top.txt", "missing.txt", "src"));
+        assertEquals("", section(run("status"), "Staged Files"));
+
+        assertEquals("", run("add", "src", "top.txt"));
+        assertEquals(String.join("\n", expected),
+                section(run("status"), "Staged Files"));
+        run("commit", "many");
+        tmp.write("src/pkg0/f0.txt", "changed");
+        run("add", "src/pkg0/f0.txt");
+        tmp.write("src/pkg0/f0.txt", "file 0");
+        run("add", "src/pkg0");
+        assertEquals("", section(run("status"), "Staged Files"));
+    }
+
+    /** Set the modification time of each working file to an hour ago,
+     *  and return that time. */
+    private long age() throws IOException {
+        long past = System.currentTimeMillis() - 3600000;
+        for (int i = 0; i < 20; i += 1) {
+            Files.setLastModifiedTime(tmp.file("f" + i + ".txt").toPath(),
+                    FileTime.fromMillis(past));
+        }
+        return past;
+    }
+
+    /** Switching branches and resetting rewrite only the files that
+     *  differ between the commits, and restore missing ones. */
+    @Test
+    public void checkoutTouchesChangedOnly() throws IOException {
+        run("init");
+        for (int i = 0; i < 20; i += 1) {
+            tmp.write("f" + i + ".txt", "file " + i);
+        }
+        run("add", ".");
+        run("commit", "twenty");
+        run("branch", "other");
+        run("checkout", "other");
+        for (int i = 0; i < 3; i += 1) {
+            tmp.write("f" + i + ".txt", "changed " + i);
+        }
+        run("add", "f0.txt", "f1.txt", "f2.txt");
+        run("commit", "three");
+        String three = run("log", "-n", "1").split("\n")[1].substring(7);
+
+        run("checkout", "master");
+        long past = age();
+        run("checkout", "other");
+        for (int i = 0; i < 20; i += 1) {
+            File f = tmp.file("f" + i + ".txt");
+            assertEquals(i < 3 ? "changed " + i : "file " + i,
+                    tmp.read("f" + i + ".txt"));
+            assertEquals(i >= 3, f.lastModified() == past);
+        }
+
+        run("checkout", "master");
+        past = age();
+        tmp.file("f10.txt").delete();
+        run("reset", three);
+        for (int i = 0; i < 20; i += 1) {
+            assertEquals(i >= 3 && i != 10,
+                    tmp.file("f" + i + ".txt").lastModified() == past);
+        }
+        assertEquals("file 10", tmp.read("f10.txt"));
+        assertEquals("changed 1", tmp.read("f1.txt"));
+    }
+
+    /** find answers from the message index, without reading the
+     *  commits, and indexes commits and merges as they are made. */
+    @Test
+    public void findFromIndex() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        run("add", "a.txt");
+        run("commit", "Fix the parser");
+        run("branch", "other");
+        tmp.write("b.txt", "b");
+        run("add", "b.txt");
+        run("commit", "add b");
+        run("checkout", "other");
+        tmp.write("c.txt", "c");
+        run("add", "c.txt");
+        run("commit", "add c");
+        run("checkout", "master");
+        run("merge", "other");
+        String fix = run("find", "Fix the parser");
+        String merged = run("find", "Merged other into master.");
+        assertTrue(fix, fix.matches("[0-9a-f]{40}\n"));
+        assertTrue(merged, merged.matches("[0-9a-f]{40}\n"));
+        assertEquals(2, run("find", "--grep", "add").split("\n").length);
+
+        for (File f : tmp.file(".gitlet/commits").listFiles()) {
+            f.delete();
+        }
+        assertEquals(fix, run("find", "Fix the parser"));
+        assertEquals(merged, run("find", "--grep", "MERGED master"));
+        assertEquals("Found no commit with that message.\n",
+                run("find", "--grep", "parser merged"));
+    }
+
+    /** Returns the number of commits printed in the log output OUT. */
+    private static int entries(String out) {
+        return out.split("===\n", -1).length - 1;
+    }
+
+    /** log and global-log stop at -n commits and at commits older than
+     *  --since, reject malformed options, and need no trees. */
+    @Test
+    public void logLimits() throws IOException {
+        run("init");
+        for (int i = 0; i < 3; i += 1) {
+            tmp.write("a.txt", "version " + i);
+            run("add", "a.txt");
+            run("commit", "version " + i);
+        }
+        String all = run("log");
+        assertEquals(4, entries(all));
+        String two = run("log", "-n", "2");
+        assertEquals(2, entries(two));
+        assertTrue(all.startsWith(two));
+        assertEquals("", run("log", "-n", "0"));
+        assertEquals(3, entries(run("log", "--since", "2000-01-01")));
+        assertEquals(1, entries(run("log", "--since", "2000-01-01",
+                "-n", "1")));
+        assertEquals("", run("log", "--since", "2999-01-01T00:00:00"));
+        for (String[] bad : new String[][] {{"log", "-n"},
+                {"log", "-n", "x"}, {"log", "--since", "yesterday"},
+                {"log", "-x", "1"}, {"global-log", "--since"}}) {
+            assertEquals("Incorrect operands.\n", run(bad));
+        }
+
+        assertEquals(4, entries(run("global-log")));
+        assertEquals(2, entries(run("global-log", "-n", "2")));
+        assertEquals(3, entries(run("global-log", "--since",
+                "2000-01-01T00:00:00")));
+        for (File f : tmp.file(".gitlet/trees").listFiles()) {
+            f.delete();
+        }
+        assertEquals(all, run("log"));
+    }
+
+    /** A merge keeps the files neither branch changed since the split
+     *  point. */
+    @Test
+    public void mergeKeepsUnchangedFiles() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        tmp.write("b.txt", "b");
+        run("add", "a.txt", "b.txt");
+        run("commit", "a and b");
+        run("branch", "other");
+        tmp.write("a.txt", "a on master");
+        run("add", "a.txt");
+        run("commit", "change a");
+        run("checkout", "other");
+        tmp.write("c.txt", "c");
+        run("add", "c.txt");
+        run("commit", "add c");
+        run("checkout", "master");
+        assertEquals("", run("merge", "other"));
+
+        String status = run("status");
+        assertEquals("", section(status, "Untracked Files"));
+        assertEquals("",
+                section(status, "Modifications Not Staged For Commit"));
+        tmp.file("b.txt").delete();
+        run("checkout", "--", "b.txt");
+        assertEquals("b", tmp.read("b.txt"));
+    }
+
+    /** A merge moves the current branch to the merge commit, not only
+     *  the head. */
+    @Test
+    public void mergeMovesBranch() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        run("add", "a.txt");
+        run("commit", "a");
+        run("branch", "other");
+        tmp.write("b.txt", "b");
+        run("add", "b.txt");
+        run("commit", "b");
+        run("checkout", "other");
+        tmp.write("c.txt", "c");
+        run("add", "c.txt");
+        run("commit", "c");
+        run("checkout", "master");
+        run("merge", "other");
+        String merged = run("log", "-n", "1");
+        assertTrue(merged, merged.endsWith("Merged other into master.\n\n"));
+        run("checkout", "other");
+        run("checkout", "master");
+        assertEquals(merged, run("log", "-n", "1"));
+    }
+
+    /** A file of arbitrary bytes is committed and checked out exactly,
+     *  not as text. */
+    @Test
+    public void binaryFiles() throws IOException {
+        run("init");
+        byte[] bytes = Fixtures.random(7, 3000);
+        bytes[0] = (byte) 0xff;
+        bytes[1] = (byte) 0xc0;
+        Utils.writeContents(tmp.file("image.bin"), (Object) bytes);
+        run("add", "image.bin");
+        run("commit", "binary");
+        Utils.writeContents(tmp.file("image.bin"), "changed");
+        run("checkout", "--", "image.bin");
+        assertArrayEquals(bytes, Utils.readContents(tmp.file("image.bin")));
+        assertEquals("",
+                section(run("status"), "Modifications Not Staged For Commit"));
+    }
+
+    /** The hash algorithm recorded when the repository was made is used
+     *  even when a system property names another. */
+    @Test
+    public void hashNotOverridden() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        run("add", "a.txt");
+        run("commit", "a");
+        System.setProperty("gitlet.core.hash", Hasher.SHA256.name());
+        try {
+            assertEquals(Hasher.SHA1.name() + "\n", run("config",
+                    "core.hash"));
+            assertSame(Hasher.SHA1, Hasher.ids());
+            tmp.write("b.txt", "b");
+            run("add", "b.txt");
+            run("commit", "b");
+        } finally {
+            System.clearProperty("gitlet.core.hash");
+        }
+        tmp.file("a.txt").delete();
+        run("checkout", "--", "a.txt");
+        assertEquals("a", tmp.read("a.txt"));
+        assertEquals("", section(run("status"), "Staged Files"));
+    }
+
+    /** A batch publishes the writes of each command that succeeds, and
+     *  not those of a command that fails partway. */
+    @Test
+    public void batchFailure() throws IOException {
+        run("init");
+        tmp.write("cmds", "branch good\nbranch bad\nbranch after\n");
+        GitletRepo repo = new GitletRepo() {
+            @Override
+            public void createBranch(String name) {
+                super.createBranch(name);
+                if (name.equals("bad")) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        try {
+            Main.run(repo, "batch",
+                    tmp.file("cmds").getPath());
+            fail("batch hid a failure");
+        } catch (IllegalStateException excp) {
+            assertEquals("failed", excp.getMessage());
+        }
+        assertEquals("good\n*master", section(run("status"), "Branches"));
+    }
+
+    /** Each command of a batch sees the branches, head and staging area
+     *  the commands before it left, without reading them again. */
+    @Test
+    public void batchKeepsState() throws IOException {
+        run("init");
+        tmp.write("a.txt", "a");
+        tmp.write("cmds", "branch x\nrm-branch x\nbranch x\nadd a.txt\n"
+                + "commit a\ncheckout x\ncheckout master\nlog -n 1\n");
+        String out = run("batch", tmp.file("cmds").getPath());
+        assertFalse(out, out.contains("already exists"));
+        assertTrue(out, out.endsWith("\na\n\n"));
+        assertEquals("*master\nx", section(run("status"), "Branches"));
+        assertEquals(out, run("log", "-n", "1"));
+        assertEquals("a", tmp.read("a.txt"));
+    }
+}
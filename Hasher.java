@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A hash function for object ids and file contents.  A Hasher keeps one
+ *  MessageDigest per thread instead of looking one up for every hash,
+ *  reads streams and channels through a per-thread buffer, and
+ *  hex-encodes through a table, so a hash allocates little besides its
+ *  result.
+ *
+ *  The algorithm of a repository's object ids is chosen when it is
+ *  created and recorded in its config as core.hash: sha1, the default,
+ *  or sha256.  Every id format has room for 160 bits, so SHA-256 digests
+ *  are cut to their first 160 bits.  The repository in use selects its
+ *  algorithm with use, and ids returns it.
+ *  @author Kevin Wang
+ */
+class Hasher {
+
+    /**
+     * SHA-1.
+     */
+    static final Hasher SHA1 = new Hasher("sha1", "SHA-1");
+    /**
+     * SHA-256, cut to the length of an id.
+     */
+    static final Hasher SHA256 = new Hasher("sha256", "SHA-256");
+
+    /**
+     * bytes of a hash kept in an id: 160 bits, whatever the algorithm.
+     */
+    static final int ID_BYTES = 20;
+    /**
+     * hex digits of an id.
+     */
+    static final int ID_LENGTH = 2 * ID_BYTES;
+    /**
+     * hex digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * read buffer size.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * read buffer of each thread.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    /**
+     * algorithm of object ids.
+     */
+    private static volatile Hasher ids = SHA1;
+
+    /**
+     * name in the config.
+     */
+    private final String name;
+    /**
+     * JDK algorithm name.
+     */
+    private final String algorithm;
+    /**
+     * digest of each thread.
+     */
+    private final ThreadLocal<MessageDigest> digests;
+
+    /** The hasher called HASHNAME in the config, computing the JDK
+     *  algorithm JDKNAME. */
+    private Hasher(String hashName, String jdkName) {
+        this.name = hashName;
+        this.algorithm = jdkName;
+        this.digests = ThreadLocal.withInitial(this::newDigest);
+    }
+
+    /** Returns the hasher called HASHNAME in the config, or null if there
+     *  is none. */
+    static Hasher forName(String hashName) {
+        for (Hasher h : new Hasher[] {SHA1, SHA256}) {
+            if (h.name.equals(hashName)) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the algorithm of object ids. */
+    static Hasher ids() {
+        return ids;
+    }
+
+    /** Compute object ids with HASHER from now on. */
+    static void use(Hasher hasher) {
+        ids = hasher;
+    }
+
+    /** Returns the name of this hasher in the config. */
+    String name() {
+        return name;
+    }
+
+    /** Returns the hash of BYTES. */
+    String hash(byte[] bytes) {
+        MessageDigest md = digest();
+        md.update(bytes);
+        return hex(md.digest());
+    }
+
+    /** Returns the hash of the concatenation of VALS, which may be any
+     *  mixture of byte arrays and Strings, the latter hashed as UTF-8. */
+    String hash(Object... vals) {
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns the hash of the rest of IN. */
+    String hash(InputStream in) throws IOException {
+        return hash(Channels.newChannel(in));
+    }
+
+    /** Returns the hash of the rest of CH. */
+    String hash(ReadableByteChannel ch) throws IOException {
+        MessageDigest md = digest();
+        ByteBuffer buf = BUFFER.get();
+        buf.clear();
+        while (ch.read(buf) >= 0) {
+            buf.flip();
+            md.update(buf);
+            buf.clear();
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns the hash of the bytes of FILE, which must be a normal
+     *  file.  Throws IllegalArgumentException in case of problems. */
+    String hash(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            return hash(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns this thread's digest, reset. */
+    private MessageDigest digest() {
+        MessageDigest md = digests.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a new digest for this algorithm. */
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + algorithm);
+        }
+    }
+
+    /** Returns the id made of the leading bytes of DIGEST. */
+    private static String hex(byte[] digest) {
+        return hex(digest, 0, ID_BYTES);
+    }
+
+    /** Returns the LEN bytes of RAW from OFF on as lower-case hex. */
+    static String hex(byte[] raw, int off, int len) {
+        char[] result = new char[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            int b = raw[off + i];
+            result[2 * i] = HEX[(b >> 4) & 0xf];
+            result[2 * i + 1] = HEX[b & 0xf];
+        }
+        return new String(result);
+    }
+}
@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** A redo journal that makes a set of writes to small files, such as the
+ *  refs, HEAD and staging files, take effect all together or not at all.
+ *  The new contents of every file are first written to .gitlet/journal
+ *  through a temporary file and a single rename, which is the moment the
+ *  writes take effect.  Only then are the files themselves written, after
+ *  which the journal is deleted.  A journal still present when the
+ *  repository is next opened belongs to an interrupted update, whose
+ *  writes are made again.  A journal ends with a CRC-32 of its contents,
+ *  and one that does not match is ignored.
+ *
+ *  When durability is on, the journal is synced before it is renamed,
+ *  its directory after, and the written files before the journal is
+ *  deleted, each set with one pass of syncs.  A single write needs no
+ *  journal: it is made atomic by writing a temporary file and renaming
+ *  it over the target.
+ *  @author Kevin Wang
+ */
+class Journal {
+
+    /**
+     * file magic.
+     */
+    private static final int MAGIC = 0x474a4e4c;
+    /**
+     * file version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * directory whose files the journal updates.
+     */
+    private final File dir;
+    /**
+     * journal file.
+     */
+    private final File file;
+
+    /** A journal for the files below directory GITLET. */
+    Journal(File gitlet) {
+        this.dir = gitlet;
+        this.file = Utils.join(gitlet, "journal");
+    }
+
+    /** Make the writes in CHANGES, a map from files below the journal's
+     *  directory to their new contents or to null for files to delete, as
+     *  one atomic update.  Sync every file involved iff SYNC. */
+    void commit(Map<File, byte[]> changes, boolean sync) {
+        if (changes.isEmpty()) {
+            return;
+        } else if (changes.size() == 1) {
+            Map.Entry<File, byte[]> e = changes.entrySet().iterator().next();
+            if (e.getValue() != null) {
+                replace(e.getKey(), e.getValue(), sync);
+            } else if (e.getKey().delete() && sync) {
+                force(e.getKey().getParentFile().toPath());
+            }
+            return;
+        }
+        replace(file, encode(changes), sync);
+        apply(changes, sync);
+        file.delete();
+    }
+
+    /** Finish the update of an interrupted commit, if there was one,
+     *  syncing the files it writes iff SYNC. */
+    void recover(boolean sync) {
+        new File(file.getPath() + ".tmp").delete();
+        if (!file.isFile()) {
+            return;
+        }
+        Map<File, byte[]> changes = decode(Utils.readContents(file));
+        if (changes != null) {
+            apply(changes, sync);
+        }
+        file.delete();
+    }
+
+    /** Make each write in CHANGES in place, then sync the files written
+     *  iff SYNC. */
+    private void apply(Map<File, byte[]> changes, boolean sync) {
+        for (Map.Entry<File, byte[]> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                e.getKey().delete();
+            } else {
+                e.getKey().getParentFile().mkdirs();
+                Utils.writeContents(e.getKey(), e.getValue());
+            }
+        }
+        if (sync) {
+            for (Map.Entry<File, byte[]> e : changes.entrySet()) {
+                force((e.getValue() == null ? e.getKey().getParentFile()
+                       : e.getKey()).toPath());
+            }
+        }
+    }
+
+    /** Replace the contents of TARGET with CONTENTS by writing a temporary
+     *  file and renaming it, syncing the file and its directory iff
+     *  SYNC. */
+    private static void replace(File target, byte[] contents, boolean sync) {
+        File tmp = new File(target.getPath() + ".tmp");
+        Utils.writeContents(tmp, contents);
+        try {
+            if (sync) {
+                force(tmp.toPath());
+            }
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (sync) {
+            force(target.getParentFile().toPath());
+        }
+    }
+
+    /** Sync each of FILES, and then each of the directories holding
+     *  them. */
+    static void force(Collection<File> files) {
+        LinkedHashMap<Path, Boolean> dirs = new LinkedHashMap<>();
+        for (File f : files) {
+            force(f.toPath());
+            dirs.put(f.getParentFile().toPath(), true);
+        }
+        for (Path d : dirs.keySet()) {
+            force(d);
+        }
+    }
+
+    /** Sync the file or directory P to disk.  Directories that cannot be
+     *  opened for syncing, as on some platforms, are skipped. */
+    private static void force(Path p) {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!Files.isDirectory(p)) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the journal recording CHANGES. */
+    private byte[] encode(Map<File, byte[]> changes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(changes.size());
+            Path base = dir.toPath();
+            for (Map.Entry<File, byte[]> e : changes.entrySet()) {
+                out.writeUTF(base.relativize(e.getKey().toPath())
+                        .toString());
+                byte[] contents = e.getValue();
+                out.writeInt(contents == null ? -1 : contents.length);
+                if (contents != null) {
+                    out.write(contents);
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the changes recorded in the journal BYTES, or null if it
+     *  is damaged. */
+    private Map<File, byte[]> decode(byte[] bytes) {
+        if (bytes.length < 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        int stored = (bytes[bytes.length - 4] & 0xff) << 24
+            | (bytes[bytes.length - 3] & 0xff) << 16
+            | (bytes[bytes.length - 2] & 0xff) << 8
+            | (bytes[bytes.length - 1] & 0xff);
+        if (stored != (int) crc.getValue()) {
+            return null;
+        }
+        LinkedHashMap<File, byte[]> result = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Arrays.copyOf(bytes,
+                        bytes.length - 4)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                File target = new File(dir, in.readUTF());
+                int len = in.readInt();
+                byte[] contents = null;
+                if (len >= 0) {
+                    contents = new byte[len];
+                    in.readFully(contents);
+                }
+                result.put(target, contents);
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Journal and of recovering from an interrupted update.
+ *  @author Kevin Wang
+ */
+public class JournalTest {
+
+    /**
+     * directory the journal updates.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Set the files to their state before the update. */
+    private void reset() {
+        tmp.write("a", "old a");
+        tmp.write("c", "old c");
+        tmp.file("d/b").delete();
+        tmp.file("d").delete();
+    }
+
+    /** Returns an update of three files, to a, d/b and c in that order,
+     *  the last a deletion. */
+    private LinkedHashMap<File, byte[]> update() {
+        LinkedHashMap<File, byte[]> changes = new LinkedHashMap<>();
+        changes.put(tmp.file("a"), "new a".getBytes(StandardCharsets.UTF_8));
+        changes.put(tmp.file("d/b"), "new b".getBytes(StandardCharsets.UTF_8));
+        changes.put(tmp.file("c"), null);
+        return changes;
+    }
+
+    /** Returns the journal left by an update that failed after its
+     *  first write: d is a plain file, so d/b cannot be written. */
+    private byte[] interrupted() {
+        reset();
+        tmp.write("d", "in the way");
+        try {
+            new Journal(tmp.getRoot()).commit(update(), false);
+            fail("wrote below a plain file");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("new a", tmp.read("a"));
+        }
+        tmp.file("d").delete();
+        assertTrue(tmp.file("journal").isFile());
+        return Utils.readContents(tmp.file("journal"));
+    }
+
+    /** Assert that no write of the update was made. */
+    private void assertUnchanged() {
+        assertEquals("old a", tmp.read("a"));
+        assertEquals("old c", tmp.read("c"));
+        assertNull(tmp.read("d/b"));
+    }
+
+    /** A complete update makes every write and leaves no journal. */
+    @Test
+    public void complete() {
+        reset();
+        Journal journal = new Journal(tmp.getRoot());
+        journal.commit(update(), true);
+        assertEquals("new a", tmp.read("a"));
+        assertEquals("new b", tmp.read("d/b"));
+        assertNull(tmp.read("c"));
+        assertFalse(tmp.file("journal").exists());
+        journal.recover(true);
+        assertEquals("new b", tmp.read("d/b"));
+    }
+
+    /** An update of a single file is made directly, without a
+     *  journal. */
+    @Test
+    public void singleFile() {
+        reset();
+        Journal journal = new Journal(tmp.getRoot());
+        LinkedHashMap<File, byte[]> changes = new LinkedHashMap<>();
+        changes.put(tmp.file("a"), "new a".getBytes(StandardCharsets.UTF_8));
+        journal.commit(changes, true);
+        assertEquals("new a", tmp.read("a"));
+        changes.put(tmp.file("a"), null);
+        journal.commit(changes, true);
+        assertNull(tmp.read("a"));
+        journal.commit(changes, true);
+        assertFalse(tmp.file("journal").exists());
+        assertFalse(tmp.file("a.tmp").exists());
+    }
+
+    /** The writes of an update interrupted after its journal was
+     *  renamed into place are all made on recovery. */
+    @Test
+    public void interruptedUpdate() {
+        interrupted();
+        new Journal(tmp.getRoot()).recover(false);
+        assertEquals("new a", tmp.read("a"));
+        assertEquals("new b", tmp.read("d/b"));
+        assertNull(tmp.read("c"));
+        assertFalse(tmp.file("journal").exists());
+    }
+
+    /** A truncated journal is discarded on recovery without making any
+     *  of its writes. */
+    @Test
+    public void truncatedJournal() {
+        byte[] whole = interrupted();
+        for (int len : new int[] {whole.length - 1, whole.length - 4,
+                                  whole.length / 2, 12, 3, 0}) {
+            reset();
+            Utils.writeContents(tmp.file("journal"), Arrays.copyOf(whole, len));
+            new Journal(tmp.getRoot()).recover(false);
+            assertUnchanged();
+            assertFalse(tmp.file("journal").exists());
+        }
+    }
+
+    /** A journal with any damaged byte, or one never renamed into place,
+     *  is discarded on recovery without making any of its writes. */
+    @Test
+    public void corruptJournal() {
+        byte[] whole = interrupted();
+        for (int i = 0; i < whole.length; i += 1) {
+            reset();
+            byte[] bad = whole.clone();
+            bad[i] ^= 0x10;
+            Utils.writeContents(tmp.file("journal"), bad);
+            new Journal(tmp.getRoot()).recover(false);
+            assertUnchanged();
+            assertFalse(tmp.file("journal").exists());
+        }
+        reset();
+        Utils.writeContents(tmp.file("journal.tmp"), whole);
+        new Journal(tmp.getRoot()).recover(false);
+        assertUnchanged();
+        assertFalse(tmp.file("journal.tmp").exists());
+    }
+}
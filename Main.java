@@ -1,6 +1,18 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Kevin Wang
@@ -10,17 +22,26 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        if (Server.forward(args)) {
+            return;
+        }
         GitletRepo repo = new GitletRepo();
+        run(repo, args);
+        repo.close();
+    }
+
+    /** Run the command in ARGS on REPO. */
+    static void run(GitletRepo repo, String... args) throws IOException {
         if (args.length <= 0) {
             System.out.println("Please enter a command.");
         } else if (args[0].equals("init")) {
-            repo.init();
+            repo.init(args.length > 1 ? args[1] : Hasher.SHA1.name());
         } else if (args[0].equals("commit")) {
             repo.commit(args[1]);
         } else if (args[0].equals("add")) {
-            repo.add(args[1]);
+            repo.add(Arrays.copyOfRange(args, 1, args.length));
         } else if (args[0].equals("log")) {
-            repo.log();
+            log(repo, args, false);
         } else if (args[0].equals("checkout")) {
             if (args.length == 2) {
                 repo.checkoutBranch(args[1]);
@@ -36,9 +57,13 @@ public class Main {
         } else if (args[0].equals("rm")) {
             repo.rm(args[1]);
         } else if (args[0].equals("global-log")) {
-            repo.globalLog();
+            log(repo, args, true);
         } else if (args[0].equals("find")) {
-            repo.find(args[1]);
+            if (args.length == 3 && args[1].equals("--grep")) {
+                repo.grep(args[2]);
+            } else {
+                repo.find(args[1]);
+            }
         } else if (args[0].equals("status")) {
             repo.status();
         } else if (args[0].equals("branch")) {
@@ -49,9 +74,145 @@ public class Main {
             repo.reset(args[1]);
         } else if (args[0].equals("merge")) {
             repo.merge(args[1]);
+        } else if (args[0].equals("repack")) {
+            repo.repack();
+        } else if (args[0].equals("watch")) {
+            repo.watch();
+        } else if (args[0].equals("serve")) {
+            new Server().serve();
+        } else if (args[0].equals("batch")) {
+            batch(repo, args);
+        } else if (args[0].equals("config")) {
+            repo.config(args[1], args.length > 2 ? args[2] : null);
         } else {
             System.out.println("No command with that name exists.");
         }
     }
 
+    /** Run log on REPO, or global-log if GLOBAL, with the options in
+     *  ARGS after the command: -n COUNT, the most commits to show, and
+     *  --since DATE, where DATE is yyyy-mm-dd or yyyy-mm-ddThh:mm:ss in
+     *  local time. */
+    private static void log(GitletRepo repo, String[] args, boolean global) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException();
+                } else if (args[i].equals("-n")) {
+                    limit = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("--since")) {
+                    since = parseDate(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        if (global) {
+            repo.globalLog(limit, since);
+        } else {
+            repo.log(limit, since);
+        }
+    }
+
+    /** Run on REPO the commands in the file named by ARGS[1], or on the
+     *  standard input if there is none, one per line, as if each had been
+     *  given to a separate invocation.  Arguments are separated by blanks
+     *  and may be quoted with ' or "; blank lines and lines starting with
+     *  # are skipped.  The repository is read once, and each command
+     *  starts from the state the one before left in memory.  The writes
+     *  of each command to the head, branch and staging files are
+     *  published once it finishes, so that a failure loses at most the
+     *  command that failed, which ends the batch and publishes nothing.
+     *  The time each command takes is reported on the standard error. */
+    private static void batch(GitletRepo repo, String[] args)
+        throws IOException {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        List<String> lines;
+        if (args.length == 2) {
+            lines = Files.readAllLines(Paths.get(args[1]));
+        } else {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in));
+            lines = in.lines().collect(Collectors.toList());
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        for (String line : lines) {
+            List<String> command = split(line);
+            if (command == null) {
+                System.out.println("Incorrect operands.");
+                continue;
+            } else if (command.isEmpty() || command.get(0).startsWith("#")) {
+                continue;
+            } else if (command.get(0).equals("batch")) {
+                System.out.println("Cannot run batch in a batch.");
+                continue;
+            }
+            long t = System.nanoTime();
+            run(repo, command.toArray(new String[0]));
+            repo.flushWrites();
+            System.out.flush();
+            System.err.printf("%10.3f ms  %s%n",
+                    (System.nanoTime() - t) / 1e6, line.trim());
+            count += 1;
+        }
+        System.err.printf("%10.3f ms  total, %d commands%n",
+                (System.nanoTime() - start) / 1e6, count);
+    }
+
+    /** Returns the blank-separated words of LINE, where ' and " quote
+     *  blanks and each other, and \\ quotes any character.  Returns null
+     *  if a quote is not closed. */
+    private static List<String> split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                c = line.charAt(i);
+            } else if (quote != 0 && c == quote) {
+                quote = 0;
+                continue;
+            } else if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+                word = word == null ? new StringBuilder() : word;
+                continue;
+            } else if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            word = word == null ? new StringBuilder() : word;
+            word.append(c);
+        }
+        if (quote != 0) {
+            return null;
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+
+    /** Returns DATE, yyyy-mm-dd or yyyy-mm-ddThh:mm:ss in local time, in
+     *  ms since the epoch. */
+    private static long parseDate(String date) {
+        LocalDateTime time = date.contains("T") ? LocalDateTime.parse(date)
+            : LocalDate.parse(date).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant()
+            .toEpochMilli();
+    }
+
 }
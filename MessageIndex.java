@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** The message of every commit, kept in .gitlet/messages so that find
+ *  need not read any commit.  The file is an append-only log of
+ *  (commit id, message) records; when loaded it is turned into a map
+ *  from exact message to commit ids and an inverted index from each
+ *  word of a message to the commits whose messages contain it.
+ *  @author Kevin Wang
+ */
+class MessageIndex {
+
+    /**
+     * file magic.
+     */
+    private static final int MAGIC = 0x474d5347;
+    /**
+     * file version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * log file.
+     */
+    private final File file;
+    /**
+     * commit ids, in log order, or null until loaded.
+     */
+    private ArrayList<String> ids;
+    /**
+     * record numbers by exact message.
+     */
+    private HashMap<String, List<Integer>> exact;
+    /**
+     * postings: record numbers, in increasing order, by word.
+     */
+    private HashMap<String, List<Integer>> postings;
+
+    /** The index stored in FILE. */
+    MessageIndex(File f) {
+        this.file = f;
+    }
+
+    /** Returns true iff the index file exists. */
+    boolean exists() {
+        return file.isFile();
+    }
+
+    /** Start an empty index, replacing any existing one. */
+    void create() {
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(file.toPath()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ids = null;
+    }
+
+    /** Record that commit ID has message MESSAGE, if the index exists.
+     *  A repository without an index gets one built from scratch the
+     *  next time it is needed. */
+    void add(String id, String message) {
+        if (!exists()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        file.toPath(), StandardOpenOption.APPEND)))) {
+            write(out, id, message);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (ids != null) {
+            put(id, message);
+        }
+    }
+
+    /** Replace the index with one holding the messages in MESSAGES, a
+     *  map from commit id to message. */
+    void rebuild(Map<String, String> messages) {
+        create();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        file.toPath(), StandardOpenOption.APPEND)))) {
+            for (Map.Entry<String, String> e : messages.entrySet()) {
+                write(out, e.getKey(), e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of commits whose message is MESSAGE, in sorted
+     *  order. */
+    List<String> find(String message) {
+        load();
+        return idsOf(exact.getOrDefault(message, List.of()));
+    }
+
+    /** Returns the ids of commits whose messages contain every word in
+     *  QUERY, ignoring case, in sorted order. */
+    List<String> grep(String query) {
+        load();
+        List<Integer> result = null;
+        for (String word : words(query)) {
+            List<Integer> posting = postings.getOrDefault(word, List.of());
+            result = result == null ? posting : intersect(result, posting);
+        }
+        return idsOf(result == null ? List.of() : result);
+    }
+
+    /** Returns the commit ids of record numbers RECORDS, sorted. */
+    private List<String> idsOf(List<Integer> records) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int r : records) {
+            result.add(ids.get(r));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the record numbers found in both A and B, which are in
+     *  increasing order. */
+    private static List<Integer> intersect(List<Integer> a,
+                                           List<Integer> b) {
+        ArrayList<Integer> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int c = Integer.compare(a.get(i), b.get(j));
+            if (c == 0) {
+                result.add(a.get(i));
+                i += 1;
+                j += 1;
+            } else if (c < 0) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the distinct lower-case words of TEXT. */
+    private static LinkedHashSet<String> words(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String w : text.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /** Add the record (ID, MESSAGE) to the loaded maps. */
+    private void put(String id, String message) {
+        int r = ids.size();
+        ids.add(id);
+        exact.computeIfAbsent(message, k -> new ArrayList<>()).add(r);
+        for (String w : words(message)) {
+            postings.computeIfAbsent(w, k -> new ArrayList<>()).add(r);
+        }
+    }
+
+    /** Read the log, if it has not been read yet.  A record cut short
+     *  by an interrupted append is ignored. */
+    private void load() {
+        if (ids != null) {
+            return;
+        }
+        ids = new ArrayList<>();
+        exact = new HashMap<>();
+        postings = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt message index.");
+            }
+            while (true) {
+                String id;
+                String message;
+                try {
+                    id = readString(in);
+                    message = readString(in);
+                } catch (EOFException excp) {
+                    break;
+                }
+                put(id, message);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the record (ID, MESSAGE) to OUT. */
+    private static void write(DataOutputStream out, String id,
+                              String message) throws IOException {
+        writeString(out, id);
+        writeString(out, message);
+    }
+
+    /** Write S to OUT as a length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns a string written by writeString from IN. */
+    private static String readString(DataInputStream in)
+        throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of MessageIndex.
+ *  @author Kevin Wang
+ */
+public class MessageIndexTest {
+
+    /**
+     * directory of the index file.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the id of the Ith commit. */
+    private static String id(int i) {
+        return Utils.sha1("commit " + i);
+    }
+
+    /** Returns an index holding the messages of five commits. */
+    private MessageIndex five() {
+        MessageIndex index = new MessageIndex(tmp.file("messages"));
+        LinkedHashMap<String, String> messages = new LinkedHashMap<>();
+        messages.put(id(0), "initial commit");
+        messages.put(id(1), "Fix the parser");
+        messages.put(id(2), "fix: parser, again");
+        messages.put(id(3), "Merged other into master.");
+        messages.put(id(4), "Fix the parser");
+        index.rebuild(messages);
+        return index;
+    }
+
+    /** Returns IDS in sorted order. */
+    private static List<String> sorted(String... ids) {
+        Arrays.sort(ids);
+        return List.of(ids);
+    }
+
+    /** Messages are found exactly, and by words in any case and order. */
+    @Test
+    public void exactAndWords() {
+        MessageIndex index = five();
+        assertEquals(sorted(id(1), id(4)), index.find("Fix the parser"));
+        assertEquals(List.of(), index.find("fix the parser"));
+        assertEquals(sorted(id(1), id(2), id(4)), index.grep("PARSER fix"));
+        assertEquals(sorted(id(1), id(4)), index.grep("the fix"));
+        assertEquals(List.of(id(3)), index.grep("merged"));
+        assertEquals(List.of(), index.grep("parser merged"));
+        assertEquals(List.of(), index.grep("!!"));
+    }
+
+    /** Messages added after loading are found by this index and by one
+     *  that reads the file again. */
+    @Test
+    public void added() {
+        MessageIndex index = five();
+        assertEquals(List.of(id(0)), index.find("initial commit"));
+        index.add(id(5), "initial design");
+        assertEquals(sorted(id(0), id(5)), index.grep("initial"));
+        assertEquals(sorted(id(0), id(5)),
+                new MessageIndex(tmp.file("messages")).grep("initial"));
+    }
+
+    /** A record cut short by an interrupted append is ignored, and an
+     *  index that was never made records nothing. */
+    @Test
+    public void truncatedAndMissing() {
+        five().add(id(5), "a long message that is cut off");
+        File f = tmp.file("messages");
+        byte[] whole = Utils.readContents(f);
+        Utils.writeContents(f, (Object) Arrays.copyOf(whole,
+                whole.length - 5));
+        MessageIndex reread = new MessageIndex(f);
+        assertEquals(List.of(), reread.grep("cut"));
+        assertEquals(sorted(id(1), id(4)), reread.find("Fix the parser"));
+
+        MessageIndex missing = new MessageIndex(tmp.file("none"));
+        missing.add(id(6), "lost");
+        assertFalse(missing.exists());
+    }
+}
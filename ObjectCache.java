@@ -0,0 +1,33 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of decoded repository objects,
+ *  keyed by SHA-1 id.  Once more than CAPACITY entries are held, the
+ *  entry that was accessed longest ago is dropped.
+ *  @author Kevin Wang
+ */
+class ObjectCache<V> extends LinkedHashMap<String, V> {
+
+    /**
+     * serialization version; caches are never serialized.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * max entries.
+     */
+    private final int capacity;
+
+    /** An empty cache holding at most CAP entries. */
+    ObjectCache(int cap) {
+        super(16, 0.75f, true);
+        this.capacity = cap;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > capacity;
+    }
+}
@@ -0,0 +1,387 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/** The object database of a repository: loose object files, one per
+ *  object under a directory per type, backed by a single pack that
+ *  loose objects are moved into by repack.  Lookups try the loose file
+ *  first and then the pack.
+ *  @author Kevin Wang
+ */
+class ObjectStore {
+
+    /**
+     * commit type.
+     */
+    static final byte COMMIT = 'c';
+    /**
+     * blob type.
+     */
+    static final byte BLOB = 'b';
+    /**
+     * chunk type.
+     */
+    static final byte CHUNK = 'k';
+    /**
+     * tree type.
+     */
+    static final byte TREE = 't';
+    /**
+     * all types, in repack order.
+     */
+    private static final byte[] TYPES = {COMMIT, TREE, BLOB, CHUNK};
+    /**
+     * a full object id.
+     */
+    private static final Pattern FULL_ID =
+        Pattern.compile("[0-9a-f]{" + Hasher.ID_LENGTH + "}");
+
+    /**
+     * write buffer size.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * commits dir.
+     */
+    private final File commitsDir;
+    /**
+     * blobs dir.
+     */
+    private final File blobsDir;
+    /**
+     * chunks dir.
+     */
+    private final File chunksDir;
+    /**
+     * trees dir.
+     */
+    private final File treesDir;
+    /**
+     * pack.
+     */
+    private final PackFile pack;
+    /**
+     * directory of the pack and the prefix indexes.
+     */
+    private final File packDir;
+    /**
+     * prefix indexes by type.
+     */
+    private final ConcurrentHashMap<Byte, PrefixIndex> prefixes =
+        new ConcurrentHashMap<>();
+    /**
+     * loose objects written since the last sync.
+     */
+    private final ConcurrentLinkedQueue<File> unsynced =
+        new ConcurrentLinkedQueue<>();
+
+    /** The object store of the repository whose metadata directory is
+     *  GITLET. */
+    ObjectStore(File gitlet) {
+        this.commitsDir = Utils.join(gitlet, "commits");
+        this.blobsDir = Utils.join(gitlet, "blobs");
+        this.chunksDir = Utils.join(gitlet, "chunks");
+        this.treesDir = Utils.join(gitlet, "trees");
+        this.packDir = Utils.join(gitlet, "pack");
+        this.pack = new PackFile(packDir);
+    }
+
+    /** The loose-object directory for objects of type TYPE. */
+    private File dir(byte type) {
+        if (type == COMMIT) {
+            return commitsDir;
+        } else if (type == BLOB) {
+            return blobsDir;
+        } else if (type == TREE) {
+            return treesDir;
+        } else {
+            return chunksDir;
+        }
+    }
+
+    /** The loose file that would hold object ID of type TYPE. */
+    private File looseFile(byte type, String id) {
+        return Utils.join(dir(type), id);
+    }
+
+    /** Returns true iff an object of type TYPE with id ID exists. */
+    boolean contains(byte type, String id) {
+        return looseFile(type, id).isFile() || pack.contains(type, id);
+    }
+
+    /** Returns the bytes of object ID of type TYPE.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    byte[] read(byte type, String id) {
+        File f = looseFile(type, id);
+        if (f.isFile()) {
+            return Utils.readContents(f);
+        }
+        byte[] result = pack.read(type, id);
+        if (result == null) {
+            throw new IllegalArgumentException("no such object " + id);
+        }
+        return result;
+    }
+
+    /** Returns a stream over the bytes of object ID of type TYPE.  Packed
+     *  objects are read straight from the mapped pack.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    InputStream open(byte type, String id) {
+        File f = looseFile(type, id);
+        if (f.isFile()) {
+            try {
+                return new BufferedInputStream(new FileInputStream(f));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        InputStream result = pack.stream(type, id);
+        if (result == null) {
+            throw new IllegalArgumentException("no such object " + id);
+        }
+        return result;
+    }
+
+    /** Returns the region of a file that holds the bytes of object ID of
+     *  type TYPE: the whole loose file, or its extent in the pack.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    Region region(byte type, String id) {
+        File f = looseFile(type, id);
+        if (f.isFile()) {
+            try {
+                FileChannel ch = FileChannel.open(f.toPath());
+                return new Region(ch, 0, ch.size(), true);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Region result = pack.region(type, id);
+        if (result == null) {
+            throw new IllegalArgumentException("no such object " + id);
+        }
+        return result;
+    }
+
+    /** Returns a stream that stores what is written to it as loose object
+     *  ID of type TYPE.  The object appears, under its final name, only
+     *  once the stream is closed, so concurrent writers of the same object
+     *  cannot corrupt it. */
+    OutputStream create(byte type, String id) {
+        dir(type).mkdir();
+        File f = looseFile(type, id);
+        try {
+            File tmp = File.createTempFile(id, ".tmp", dir(type));
+            return new BufferedOutputStream(
+                    new FileOutputStream(tmp), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    boolean existed = f.exists();
+                    Files.move(tmp.toPath(), f.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                    if (!existed) {
+                        prefixIndex(type).add(id);
+                    }
+                    unsynced.add(f);
+                }
+            };
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store CONTENTS as loose object ID of type TYPE. */
+    void write(byte type, String id, byte[] contents) {
+        try (OutputStream out = create(type, id)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Make every loose object written since the last sync durable,
+     *  syncing each file and then each directory written to, iff SYNC;
+     *  otherwise just forget them. */
+    void sync(boolean sync) {
+        ArrayList<File> written = new ArrayList<>();
+        for (File f = unsynced.poll(); f != null; f = unsynced.poll()) {
+            written.add(f);
+        }
+        if (sync) {
+            Journal.force(written);
+        }
+    }
+
+    /** Returns the ids of the loose objects of type TYPE, skipping any
+     *  partly written temporary files. */
+    private List<String> looseIds(byte type) {
+        List<String> names = Utils.plainFilenamesIn(dir(type));
+        ArrayList<String> result = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Hasher.ID_LENGTH) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of all objects of type TYPE, loose or packed, in
+     *  sorted order. */
+    List<String> ids(byte type) {
+        return ids(type, looseIds(type));
+    }
+
+    /** Returns the ids of all objects of type TYPE, the packed ones and
+     *  LOOSE, in sorted order. */
+    private List<String> ids(byte type, List<String> loose) {
+        HashSet<String> all = new HashSet<>(pack.ids(type));
+        all.addAll(loose);
+        ArrayList<String> result = new ArrayList<>(all);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the prefix index of objects of type TYPE. */
+    private PrefixIndex prefixIndex(byte type) {
+        return prefixes.computeIfAbsent(type, t -> new PrefixIndex(
+                Utils.join(packDir, "prefix-" + (char) (byte) t)));
+    }
+
+    /** Rebuild the prefix index of objects of type TYPE from a listing of
+     *  every id. */
+    private void reindex(byte type) {
+        List<String> loose = looseIds(type);
+        prefixIndex(type).rebuild(ids(type, loose), loose.size());
+    }
+
+    /** Returns up to LIMIT ids of objects of type TYPE that begin with
+     *  PREFIX, in sorted order.  A full id is checked directly;
+     *  abbreviations are looked up in the persistent prefix index of
+     *  that type, which is rebuilt from a listing of every id when it is
+     *  stale, or when a lookup finds nothing and the number of loose
+     *  objects shows that the index is missing some. */
+    List<String> resolve(byte type, String prefix, int limit) {
+        if (FULL_ID.matcher(prefix).matches()) {
+            return contains(type, prefix) ? List.of(prefix) : List.of();
+        }
+        PrefixIndex index = prefixIndex(type);
+        if (index.stale()) {
+            reindex(type);
+        }
+        List<String> result = index.find(prefix, limit);
+        if (result.isEmpty()
+                && !index.complete(looseIds(type).size())) {
+            reindex(type);
+            result = index.find(prefix, limit);
+        }
+        return result;
+    }
+
+    /** Move every loose object into the pack, deleting a loose file only
+     *  once the pack holds its object, and rebuild the prefix index of
+     *  each type moved.  Returns the number of objects moved. */
+    int repack() {
+        int moved = 0;
+        for (byte type : TYPES) {
+            LinkedHashMap<String, File> loose = new LinkedHashMap<>();
+            for (String id : looseIds(type)) {
+                loose.put(id, looseFile(type, id));
+            }
+            if (loose.isEmpty()) {
+                continue;
+            }
+            List<String> packed = pack.append(type, loose);
+            for (String id : packed) {
+                looseFile(type, id).delete();
+            }
+            reindex(type);
+            moved += packed.size();
+        }
+        return moved;
+    }
+    /** The bytes of one object, as a range of an open file channel, from
+     *  which they can be copied to another channel without passing through
+     *  the Java heap. */
+    static class Region implements Closeable {
+        /**
+         * file holding the object.
+         */
+        private final FileChannel channel;
+        /**
+         * offset of the object in the file.
+         */
+        private final long offset;
+        /**
+         * object length.
+         */
+        private final long length;
+        /**
+         * true iff closing the region closes the channel.
+         */
+        private final boolean owned;
+
+        /** The LEN bytes of CH starting at OFF.  Closing the region closes
+         *  CH iff OWN. */
+        Region(FileChannel ch, long off, long len, boolean own) {
+            this.channel = ch;
+            this.offset = off;
+            this.length = len;
+            this.owned = own;
+        }
+
+        /** Returns the first byte of the object, or -1 if it is empty. */
+        int first() throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            if (length == 0 || channel.read(buf, offset) < 1) {
+                return -1;
+            }
+            return buf.get(0) & 0xff;
+        }
+
+        /** Copy the object's bytes from offset SKIP on to TARGET, at its
+         *  current position, leaving the copying to the operating system
+         *  where it can. */
+        void transferTo(long skip, WritableByteChannel target)
+            throws IOException {
+            for (long pos = offset + skip, end = offset + length; pos < end;) {
+                long n = channel.transferTo(pos, end - pos, target);
+                if (n <= 0) {
+                    throw new IOException("short object");
+                }
+                pos += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A pack of repository objects.  The pack is an append-only data file,
+ *  where each object is stored as a type byte, an 8-byte length and the
+ *  object's bytes, plus an index file read through a memory map.  The
+ *  index holds a 256-entry fan-out table of cumulative counts by first
+ *  id byte, the 20-byte ids, their 8-byte data offsets and their type
+ *  bytes, sorted by id and then type, so a lookup is one binary search
+ *  over a small range.  Objects of different types may share an id, as
+ *  a chunk and a blob with the same bytes do.
+ *
+ *  The data file is opened and mapped once, along with the index, and
+ *  objects are read as slices of that mapping.  It is mapped again only
+ *  when the index is and the file has grown.  Only the first 2 GiB are
+ *  mapped; objects beyond them are read through the file's channel.
+ *  @author Kevin Wang
+ */
+class PackFile {
+
+    /**
+     * index magic.
+     */
+    private static final int IDX_MAGIC = 0x47504b49;
+    /**
+     * index version.
+     */
+    private static final int IDX_VERSION = 3;
+    /**
+     * oldest readable index version.  Version 2 indexes are sorted by id
+     * alone but hold each id once, so they are also sorted by id and
+     * type.
+     */
+    private static final int IDX_MIN_VERSION = 2;
+    /**
+     * fan-out entries.
+     */
+    private static final int FANOUT = 256;
+    /**
+     * index header length.
+     */
+    private static final int HEADER = 12;
+    /**
+     * data record header length.
+     */
+    private static final int RECORD_HEADER = 9;
+    /**
+     * bytes mapped at a time when streaming an object.
+     */
+    private static final long WINDOW = 64 << 20;
+
+    /**
+     * data file.
+     */
+    private final File dataFile;
+    /**
+     * index file.
+     */
+    private final File idxFile;
+    /**
+     * mapped index.
+     */
+    private volatile MappedByteBuffer idx;
+    /**
+     * open data file.
+     */
+    private volatile FileChannel data;
+    /**
+     * mapped data file, from its start.
+     */
+    private volatile MappedByteBuffer dataMap;
+    /**
+     * number of objects.
+     */
+    private volatile int count;
+
+    /** The pack whose data and index files live in directory DIR.  The
+     *  files are mapped lazily on first use. */
+    PackFile(File dir) {
+        this.dataFile = Utils.join(dir, "pack.dat");
+        this.idxFile = Utils.join(dir, "pack.idx");
+    }
+
+    /** Returns true iff this pack has been written. */
+    boolean exists() {
+        return idxFile.isFile() && dataFile.isFile();
+    }
+
+    /** Map the index, if it is not mapped already, and then the data
+     *  file, unless the mapping held already covers all of it.  Every
+     *  object in the index was written before the index, so the data
+     *  mapping covers them all, up to its 2 GiB limit. */
+    private synchronized void open() {
+        if (idx != null || !exists()) {
+            return;
+        }
+        MappedByteBuffer index;
+        try (FileChannel ch = FileChannel.open(idxFile.toPath())) {
+            index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (index.getInt(0) != IDX_MAGIC
+            || index.getInt(4) < IDX_MIN_VERSION
+            || index.getInt(4) > IDX_VERSION) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        try {
+            if (data == null) {
+                data = FileChannel.open(dataFile.toPath());
+            }
+            long size = Math.min(data.size(), Integer.MAX_VALUE);
+            if (dataMap == null || size > dataMap.capacity()) {
+                dataMap = data.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        count = index.getInt(8);
+        idx = index;
+    }
+
+    /** Byte offset in the index of the Ith id. */
+    private int idOffset(int i) {
+        return HEADER + FANOUT * 4 + i * Hasher.ID_BYTES;
+    }
+
+    /** Returns the position of the object of type TYPE with hex id ID in
+     *  the index, or -1 if it is not in this pack. */
+    private int find(byte type, String id) {
+        open();
+        if (idx == null || id.length() != Hasher.ID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toRaw(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : idx.getInt(HEADER + (first - 1) * 4);
+        int hi = idx.getInt(HEADER + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(idOffset(mid), key);
+            if (cmp == 0) {
+                cmp = typeAt(mid) - type;
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the index id at byte offset POS with KEY. */
+    private int compareAt(int pos, byte[] key) {
+        for (int i = 0; i < Hasher.ID_BYTES; i += 1) {
+            int c = (idx.get(pos + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns true iff this pack holds an object of type TYPE and id
+     *  ID. */
+    boolean contains(byte type, String id) {
+        return find(type, id) >= 0;
+    }
+
+    /** The type byte of the Ith object. */
+    private byte typeAt(int i) {
+        return idx.get(HEADER + FANOUT * 4 + count * (Hasher.ID_BYTES + 8) + i);
+    }
+
+    /** The data offset of the Ith object. */
+    private long offsetAt(int i) {
+        return idx.getLong(HEADER + FANOUT * 4 + count * Hasher.ID_BYTES
+                + i * 8);
+    }
+
+    /** Returns the data offset and length of the bytes of the object of
+     *  type TYPE with id ID, or null if it is not in this pack. */
+    private long[] locate(byte type, String id) {
+        int i = find(type, id);
+        if (i < 0) {
+            return null;
+        }
+        long off = offsetAt(i);
+        ByteBuffer map = dataMap;
+        if (off + RECORD_HEADER <= map.capacity()) {
+            return new long[] {off + RECORD_HEADER,
+                map.getLong((int) off + 1)};
+        }
+        ByteBuffer hdr = ByteBuffer.allocate(RECORD_HEADER);
+        try {
+            data.read(hdr, off);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new long[] {off + RECORD_HEADER, hdr.getLong(1)};
+    }
+
+    /** Returns the slice of the data mapping holding the LOC[1] bytes at
+     *  offset LOC[0], or null if they lie beyond the mapping. */
+    private ByteBuffer mapped(long[] loc) {
+        ByteBuffer map = dataMap;
+        if (loc[0] + loc[1] > map.capacity()) {
+            return null;
+        }
+        return map.slice((int) loc[0], (int) loc[1]);
+    }
+
+    /** Returns a read-only mapped slice holding the bytes of the object
+     *  of type TYPE with id ID, or null if it is not in this pack. */
+    ByteBuffer slice(byte type, String id) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return null;
+        }
+        ByteBuffer result = mapped(loc);
+        if (result != null) {
+            return result;
+        }
+        if (loc[1] > Integer.MAX_VALUE) {
+            throw Utils.error("Object too large to map: %s", id);
+        }
+        try {
+            return data.map(FileChannel.MapMode.READ_ONLY, loc[0], loc[1]);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the region of the data file holding the bytes of the object
+     *  of type TYPE with id ID, or null if it is not in this pack.  The
+     *  region shares the pack's channel, which closing it leaves open. */
+    ObjectStore.Region region(byte type, String id) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return null;
+        }
+        return new ObjectStore.Region(data, loc[0], loc[1], false);
+    }
+
+    /** Returns a stream over the bytes of the object of type TYPE with
+     *  id ID, or null if it is not in this pack.  Objects beyond the data
+     *  mapping are mapped a window at a time, so objects of any size can
+     *  be streamed. */
+    InputStream stream(byte type, String id) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return null;
+        }
+        ByteBuffer buf = mapped(loc);
+        if (buf != null) {
+            return new RegionStream(buf);
+        }
+        return new RegionStream(data, loc[0], loc[1]);
+    }
+
+    /** Returns the bytes of the object of type TYPE with id ID, or null
+     *  if it is not in this pack. */
+    byte[] read(byte type, String id) {
+        ByteBuffer buf = slice(type, id);
+        if (buf == null) {
+            return null;
+        }
+        byte[] result = new byte[buf.remaining()];
+        buf.get(result);
+        return result;
+    }
+
+    /** Returns the hex ids of all objects of type TYPE in this pack, in
+     *  sorted order. */
+    List<String> ids(byte type) {
+        open();
+        ArrayList<String> result = new ArrayList<>();
+        if (idx == null) {
+            return result;
+        }
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            if (typeAt(i) == type) {
+                idx.get(idOffset(i), raw);
+                result.add(toHex(raw));
+            }
+        }
+        return result;
+    }
+
+    /** Append OBJECTS, a map from hex id to the loose file holding the
+     *  object, to this pack as objects of type TYPE and rewrite its index.
+     *  Objects already in the pack with type TYPE are skipped.  Files are
+     *  copied channel to channel.  The new index replaces the old one with
+     *  a single rename, so readers see either the old or the new pack.
+     *  Returns the ids of OBJECTS that the pack now holds. */
+    List<String> append(byte type, Map<String, File> objects) {
+        open();
+        TreeMap<String, long[]> entries = new TreeMap<>();
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            idx.get(idOffset(i), raw);
+            entries.put(key(typeAt(i), toHex(raw)),
+                    new long[] {offsetAt(i), typeAt(i)});
+        }
+        ArrayList<String> held = new ArrayList<>();
+        dataFile.getParentFile().mkdirs();
+        try (FileChannel data = FileChannel.open(dataFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long pos = data.size();
+            ByteBuffer hdr = ByteBuffer.allocate(RECORD_HEADER);
+            for (Map.Entry<String, File> e : objects.entrySet()) {
+                String key = key(type, e.getKey());
+                if (entries.containsKey(key)) {
+                    held.add(e.getKey());
+                    continue;
+                }
+                try (FileChannel in = FileChannel.open(
+                        e.getValue().toPath())) {
+                    long len = in.size();
+                    hdr.clear();
+                    hdr.put(type).putLong(len).flip();
+                    data.write(hdr, pos);
+                    long done = 0;
+                    while (done < len) {
+                        long n = in.transferTo(done, len - done,
+                                data.position(pos + RECORD_HEADER + done));
+                        if (n <= 0) {
+                            throw new IOException("short object");
+                        }
+                        done += n;
+                    }
+                    entries.put(key, new long[] {pos, type});
+                    held.add(e.getKey());
+                    pos += RECORD_HEADER + len;
+                }
+            }
+            data.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndex(entries);
+        return held;
+    }
+
+    /** Returns the key of the object of type TYPE with hex id ID in the
+     *  entries of append, which sort as the index does. */
+    private static String key(byte type, String id) {
+        return id + (char) type;
+    }
+
+    /** Write ENTRIES, the keys of objects mapped to offset and type, as the
+     *  new index. */
+    private void writeIndex(TreeMap<String, long[]> entries) {
+        int n = entries.size();
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER + FANOUT * 4 + n * (Hasher.ID_BYTES + 8 + 1));
+        out.putInt(IDX_MAGIC).putInt(IDX_VERSION).putInt(n);
+        int[] fanout = new int[FANOUT];
+        for (String key : entries.keySet()) {
+            fanout[Integer.parseInt(key.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int f : fanout) {
+            total += f;
+            out.putInt(total);
+        }
+        for (String key : entries.keySet()) {
+            out.put(toRaw(key));
+        }
+        for (long[] e : entries.values()) {
+            out.putLong(e[0]);
+        }
+        for (long[] e : entries.values()) {
+            out.put((byte) e[1]);
+        }
+        File tmp = new File(idxFile.getPath() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        try {
+            Files.move(tmp.toPath(), idxFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        idx = null;
+    }
+
+    /** The 20 raw bytes of hex id ID, ignoring anything after it. */
+    private static byte[] toRaw(String id) {
+        byte[] result = new byte[Hasher.ID_BYTES];
+        for (int i = 0; i < Hasher.ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** The hex id for the 20 raw bytes RAW. */
+    private static String toHex(byte[] raw) {
+        return Hasher.hex(raw, 0, raw.length);
+    }
+
+    /** An InputStream over a mapped buffer, or over a region of a file
+     *  channel mapped WINDOW bytes at a time. */
+    private static class RegionStream extends InputStream {
+
+        /**
+         * source.
+         */
+        private final FileChannel channel;
+        /**
+         * next offset to map.
+         */
+        private long pos;
+        /**
+         * end of the region.
+         */
+        private final long end;
+        /**
+         * current window.
+         */
+        private ByteBuffer window = ByteBuffer.allocate(0);
+
+        /** A stream over the LEN bytes of CH starting at OFF.  Closing
+         *  the stream leaves CH open. */
+        RegionStream(FileChannel ch, long off, long len) {
+            this.channel = ch;
+            this.pos = off;
+            this.end = off + len;
+        }
+
+        /** A stream over the remaining bytes of BUF. */
+        RegionStream(ByteBuffer buf) {
+            this(null, 0, 0);
+            this.window = buf;
+        }
+
+        /** Returns false iff the region is exhausted, mapping the next
+         *  window if the current one is used up. */
+        private boolean fill() throws IOException {
+            if (!window.hasRemaining() && pos < end) {
+                long n = Math.min(WINDOW, end - pos);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, pos, n);
+                pos += n;
+            }
+            return window.hasRemaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? window.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+    }
+}
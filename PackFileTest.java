@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.random;
+import static org.junit.Assert.*;
+
+/** Tests of PackFile and of repacking an ObjectStore.
+ *  @author Kevin Wang
+ */
+public class PackFileTest {
+
+    /**
+     * metadata directory of the store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the rest of IN. */
+    private static byte[] drain(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Objects written loose read back the same once packed, through
+     *  every way of reading them, and later repacks add to the pack. */
+    @Test
+    public void roundTrip() throws IOException {
+        File gitlet = tmp.getRoot();
+        ObjectStore objects = new ObjectStore(gitlet);
+        Random rand = new Random(42);
+        byte[][] contents = new byte[50][];
+        String[] ids = new String[contents.length];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = random(rand, rand.nextInt(5000));
+            ids[i] = Utils.sha1(contents[i]);
+        }
+        for (int i = 0; i < 30; i += 1) {
+            objects.write(ObjectStore.BLOB, ids[i], contents[i]);
+        }
+        assertEquals(30, objects.repack());
+        for (int i = 30; i < contents.length; i += 1) {
+            objects.write(ObjectStore.BLOB, ids[i], contents[i]);
+        }
+        assertEquals(20, objects.repack());
+        assertEquals(0, objects.repack());
+        assertEquals(List.of(), Utils.plainFilenamesIn(
+                Utils.join(gitlet, "blobs")));
+
+        ObjectStore reopened = new ObjectStore(gitlet);
+        for (int i = 0; i < contents.length; i += 1) {
+            assertTrue(reopened.contains(ObjectStore.BLOB, ids[i]));
+            assertFalse(reopened.contains(ObjectStore.TREE, ids[i]));
+            assertArrayEquals(contents[i],
+                    reopened.read(ObjectStore.BLOB, ids[i]));
+            assertArrayEquals(contents[i],
+                    drain(reopened.open(ObjectStore.BLOB, ids[i])));
+        }
+        assertEquals(contents.length, reopened.ids(ObjectStore.BLOB).size());
+        String missing = Utils.sha1("missing");
+        assertFalse(reopened.contains(ObjectStore.BLOB, missing));
+        assertEquals(List.of(ids[7]), reopened.resolve(ObjectStore.BLOB,
+                ids[7].substring(0, 12), 2));
+    }
+
+    /** Objects of different types with the same id are all kept, whether
+     *  they are packed together or one after the other. */
+    @Test
+    public void sameIdDifferentTypes() {
+        File gitlet = tmp.getRoot();
+        ObjectStore objects = new ObjectStore(gitlet);
+        String id = Utils.sha1("shared");
+        byte[] blob = "blob".getBytes(StandardCharsets.UTF_8);
+        byte[] chunk = "chunk".getBytes(StandardCharsets.UTF_8);
+        byte[] tree = "tree".getBytes(StandardCharsets.UTF_8);
+        objects.write(ObjectStore.BLOB, id, blob);
+        objects.write(ObjectStore.CHUNK, id, chunk);
+        assertEquals(2, objects.repack());
+        objects.write(ObjectStore.TREE, id, tree);
+        assertEquals(1, objects.repack());
+
+        ObjectStore reopened = new ObjectStore(gitlet);
+        assertArrayEquals(blob, reopened.read(ObjectStore.BLOB, id));
+        assertArrayEquals(chunk, reopened.read(ObjectStore.CHUNK, id));
+        assertArrayEquals(tree, reopened.read(ObjectStore.TREE, id));
+        assertFalse(reopened.contains(ObjectStore.COMMIT, id));
+        assertEquals(List.of(id), reopened.ids(ObjectStore.CHUNK));
+    }
+}
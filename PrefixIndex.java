@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A sorted table of the ids of one type of object, kept in a file, for
+ *  resolving abbreviated ids.  The table holds a header, with the number
+ *  of loose objects there were when it was built, a 256-entry
+ *  fan-out table of cumulative counts by first id byte and the sorted
+ *  20-byte ids, as a pack index does, and is read through a memory map,
+ *  so a lookup is one binary search over a small range.
+ *
+ *  Ids of objects written after the table are appended, one hex id per
+ *  line, to a companion log, which every lookup also reads and which is
+ *  folded into the table once it grows past LOG_LIMIT ids.  Objects are
+ *  only ever added, or moved between loose files and the pack, so the
+ *  table and log together hold every id, unless a write never reached
+ *  the log, as after a crash or from an older gitlet.  The table is then
+ *  rebuilt when a lookup finds nothing.
+ *  @author Kevin Wang
+ */
+class PrefixIndex {
+
+    /**
+     * ids the log may hold before it is folded into the table.
+     */
+    static final int LOG_LIMIT = 1024;
+
+    /**
+     * table magic.
+     */
+    private static final int MAGIC = 0x47505849;
+    /**
+     * table version.
+     */
+    private static final int VERSION = 2;
+    /**
+     * header length.
+     */
+    private static final int HEADER = 16;
+    /**
+     * fan-out entries.
+     */
+    private static final int FANOUT = 256;
+    /**
+     * length of a log line.
+     */
+    private static final int LINE = Hasher.ID_LENGTH + 1;
+
+    /**
+     * table file.
+     */
+    private final File table;
+    /**
+     * log of ids added since the table was written.
+     */
+    private final File log;
+
+    /** The index kept in the file TABLEFILE and its log. */
+    PrefixIndex(File tableFile) {
+        this.table = tableFile;
+        this.log = new File(tableFile.getPath() + ".log");
+    }
+
+    /** Returns true iff the table must be rebuilt before a lookup: it is
+     *  missing or in another format, or its log has grown past LOG_LIMIT
+     *  ids. */
+    boolean stale() {
+        return log.length() > (long) LOG_LIMIT * LINE || header() == null;
+    }
+
+    /** Returns true iff the table and log account for LOOSE loose objects:
+     *  the number there were when the table was built, plus one for each
+     *  whole line of the log.  Otherwise some object was written without
+     *  reaching the log, or loose objects were packed without rebuilding
+     *  the table, and a lookup may miss ids. */
+    boolean complete(int loose) {
+        ByteBuffer hdr = header();
+        long len = log.length();
+        return hdr != null && len % LINE == 0
+            && hdr.getInt(12) + len / LINE == loose;
+    }
+
+    /** Returns the header of the table, or null if it is missing or in
+     *  another format. */
+    private ByteBuffer header() {
+        if (!table.isFile()) {
+            return null;
+        }
+        ByteBuffer hdr = ByteBuffer.allocate(HEADER);
+        try (FileChannel ch = FileChannel.open(table.toPath())) {
+            while (hdr.hasRemaining() && ch.read(hdr) > 0) {
+                continue;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (hdr.hasRemaining() || hdr.getInt(0) != MAGIC
+                || hdr.getInt(4) != VERSION) {
+            return null;
+        }
+        return hdr;
+    }
+
+    /** Record that an object with id ID has been written, if there is a
+     *  table to keep up to date. */
+    void add(String id) {
+        if (!table.isFile()) {
+            return;
+        }
+        byte[] line = (id + "\n").getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel ch = FileChannel.open(log.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.wrap(line));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replace the table with one holding SORTED, a list of full ids in
+     *  sorted order, of which LOOSE are loose objects, and empty the log.
+     *  The new table replaces the old one with a single rename. */
+    void rebuild(List<String> sorted, int loose) {
+        int n = sorted.size();
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER + FANOUT * 4 + n * Hasher.ID_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(loose);
+        int[] fanout = new int[FANOUT];
+        for (String id : sorted) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int f : fanout) {
+            total += f;
+            out.putInt(total);
+        }
+        for (String id : sorted) {
+            out.put(toRaw(id));
+        }
+        table.getParentFile().mkdirs();
+        File tmp = new File(table.getPath() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        try {
+            Files.move(tmp.toPath(), table.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        log.delete();
+    }
+
+    /** Returns up to LIMIT ids beginning with PREFIX, in sorted order.
+     *  PREFIX must be a non-empty string of lower-case hex digits to match
+     *  anything. */
+    List<String> find(String prefix, int limit) {
+        TreeSet<String> found = new TreeSet<>();
+        if (prefix.isEmpty() || prefix.length() > Hasher.ID_LENGTH
+            || !isHex(prefix) || !table.isFile()) {
+            return new ArrayList<>();
+        }
+        findInTable(prefix, limit, found);
+        if (log.isFile()) {
+            for (String id : Utils.readContentsAsString(log).split("\n")) {
+                if (id.length() == Hasher.ID_LENGTH && id.startsWith(prefix)) {
+                    found.add(id);
+                }
+            }
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : found) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Add to FOUND up to LIMIT ids in the table that begin with
+     *  PREFIX. */
+    private void findInTable(String prefix, int limit, TreeSet<String> found) {
+        MappedByteBuffer idx;
+        try (FileChannel ch = FileChannel.open(table.toPath())) {
+            idx = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (idx.getInt(0) != MAGIC || idx.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt prefix index.");
+        }
+        int firstByte = Character.digit(prefix.charAt(0), 16) << 4;
+        int lastByte = firstByte + 15;
+        if (prefix.length() > 1) {
+            firstByte = Integer.parseInt(prefix.substring(0, 2), 16);
+            lastByte = firstByte;
+        }
+        int lo = firstByte == 0 ? 0
+            : idx.getInt(HEADER + (firstByte - 1) * 4);
+        int hi = idx.getInt(HEADER + lastByte * 4);
+        byte[] key = toRaw(prefix + "0".repeat(Hasher.ID_LENGTH
+                - prefix.length()));
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(idx, mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int end = idx.getInt(HEADER + lastByte * 4);
+        byte[] raw = new byte[Hasher.ID_BYTES];
+        for (int i = lo; i < end && found.size() < limit; i += 1) {
+            idx.get(HEADER + FANOUT * 4 + i * Hasher.ID_BYTES, raw);
+            String id = Hasher.hex(raw, 0, Hasher.ID_BYTES);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            found.add(id);
+        }
+    }
+
+    /** Compare the Ith id of IDX with KEY. */
+    private static int compareAt(ByteBuffer idx, int i, byte[] key) {
+        int pos = HEADER + FANOUT * 4 + i * Hasher.ID_BYTES;
+        for (int k = 0; k < Hasher.ID_BYTES; k += 1) {
+            int c = (idx.get(pos + k) & 0xff) - (key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The 20 raw bytes of hex id ID. */
+    private static byte[] toRaw(String id) {
+        byte[] result = new byte[Hasher.ID_BYTES];
+        for (int i = 0; i < Hasher.ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns true iff S consists only of lower-case hex digits. */
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static gitlet.Fixtures.content;
+import static org.junit.Assert.*;
+
+/** Tests of PrefixIndex and of resolving abbreviated ids.
+ *  @author Kevin Wang
+ */
+public class PrefixIndexTest {
+
+    /**
+     * metadata directory of the store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the ids in IDS that begin with PREFIX, in sorted order. */
+    private static List<String> matching(List<String> ids, String prefix) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : new TreeSet<>(ids)) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Lookups in a table and its log find exactly the ids with each
+     *  prefix, and the log is folded in once it is long enough. */
+    @Test
+    public void tableAndLog() {
+        File file = tmp.file("prefix");
+        PrefixIndex index = new PrefixIndex(file);
+        assertTrue(index.stale());
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i <= 1000 + PrefixIndex.LOG_LIMIT; i += 1) {
+            ids.add(Utils.sha1(content(i)));
+        }
+        index.add(ids.get(0));
+        index.rebuild(new ArrayList<>(new TreeSet<>(ids.subList(0, 1000))),
+                0);
+        assertFalse(index.stale());
+        for (String id : ids.subList(1000, ids.size())) {
+            index.add(id);
+        }
+        assertTrue(index.stale());
+
+        PrefixIndex reopened = new PrefixIndex(file);
+        for (String prefix : new String[] {"0", "a", "ff", "7f3",
+                                           ids.get(1500).substring(0, 6),
+                                           ids.get(10)}) {
+            assertEquals(matching(ids, prefix), reopened.find(prefix, 10000));
+        }
+        assertEquals(matching(ids, "c").subList(0, 3),
+                reopened.find("c", 3));
+        assertEquals(List.of(), reopened.find("xyz", 10));
+        reopened.rebuild(new ArrayList<>(new TreeSet<>(ids)), 0);
+        assertFalse(reopened.stale());
+        assertEquals(matching(ids, "5"), reopened.find("5", 10000));
+    }
+
+    /** A store resolves abbreviations of objects written by this and
+     *  other instances, including writes the index never heard of. */
+    @Test
+    public void resolve() {
+        File gitlet = tmp.getRoot();
+        ObjectStore objects = new ObjectStore(gitlet);
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i += 1) {
+            ids.add(Utils.sha1(content(i)));
+            objects.write(ObjectStore.BLOB, ids.get(i), content(i));
+        }
+        objects.repack();
+        String first = ids.get(3);
+        assertEquals(List.of(first),
+                objects.resolve(ObjectStore.BLOB, first.substring(0, 8), 2));
+
+        ObjectStore other = new ObjectStore(gitlet);
+        ids.add(Utils.sha1(content(40)));
+        other.write(ObjectStore.BLOB, ids.get(40), content(40));
+        String added = ids.get(40);
+        assertEquals(List.of(added),
+                objects.resolve(ObjectStore.BLOB, added.substring(0, 8), 2));
+
+        String hidden = Utils.sha1(content(41));
+        Utils.writeContents(Utils.join(gitlet, "blobs", hidden),
+                (Object) content(41));
+        assertEquals(List.of(hidden), new ObjectStore(gitlet).resolve(
+                ObjectStore.BLOB, hidden.substring(0, 8), 2));
+        assertEquals(List.of(), objects.resolve(ObjectStore.TREE,
+                first.substring(0, 8), 2));
+    }
+
+    /** Returns the identity of the file holding the table of the prefix
+     *  index of blobs in the store in GITLET, which changes whenever the
+     *  table is rebuilt. */
+    private static Object table(File gitlet) throws IOException {
+        File f = Utils.join(gitlet, "pack",
+                "prefix-" + (char) ObjectStore.BLOB);
+        return Files.readAttributes(f.toPath(), BasicFileAttributes.class)
+            .fileKey();
+    }
+
+    /** An abbreviation that matches nothing does not rebuild an index
+     *  that accounts for every loose object, before or after a repack. */
+    @Test
+    public void missKeepsTable() throws IOException {
+        File gitlet = tmp.getRoot();
+        ObjectStore objects = new ObjectStore(gitlet);
+        for (int i = 0; i < 10; i += 1) {
+            objects.write(ObjectStore.BLOB, Utils.sha1(content(i)),
+                    content(i));
+        }
+        String id = Utils.sha1(content(0));
+        assertEquals(List.of(id),
+                objects.resolve(ObjectStore.BLOB, id.substring(0, 8), 2));
+        Object before = table(gitlet);
+        objects.write(ObjectStore.BLOB, id, content(0));
+        objects.write(ObjectStore.BLOB, Utils.sha1(content(10)),
+                content(10));
+        assertEquals(List.of(),
+                objects.resolve(ObjectStore.BLOB, "0123456789", 2));
+        assertEquals(before, table(gitlet));
+
+        objects.repack();
+        before = table(gitlet);
+        assertEquals(List.of(), new ObjectStore(gitlet).resolve(
+                ObjectStore.BLOB, "0123456789", 2));
+        assertEquals(before, table(gitlet));
+    }
+
+    /** An abbreviation of two ids is reported as ambiguous when one is
+     *  in the table and the other only in its log. */
+    @Test
+    public void ambiguousInLog() {
+        HashMap<String, Integer> seen = new HashMap<>();
+        int b = 0;
+        while (!seen.containsKey(Utils.sha1(content(b)).substring(0, 4))) {
+            seen.put(Utils.sha1(content(b)).substring(0, 4), b);
+            b += 1;
+        }
+        int a = seen.get(Utils.sha1(content(b)).substring(0, 4));
+        String first = Utils.sha1(content(a));
+        String second = Utils.sha1(content(b));
+        String prefix = first.substring(0, 4);
+        File gitlet = tmp.getRoot();
+        ObjectStore objects = new ObjectStore(gitlet);
+        objects.write(ObjectStore.BLOB, first, content(a));
+        assertEquals(List.of(first),
+                objects.resolve(ObjectStore.BLOB, prefix, 2));
+        new ObjectStore(gitlet).write(ObjectStore.BLOB, second, content(b));
+        assertEquals(new ArrayList<>(new TreeSet<>(List.of(first, second))),
+                objects.resolve(ObjectStore.BLOB, prefix, 2));
+    }
+}
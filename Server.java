@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** A long-running server that runs commands against one warm GitletRepo,
+ *  and the client that hands commands to it, so that a command costs
+ *  neither a repository load nor a cold JVM.  The server listens on the
+ *  Unix-domain socket .gitlet/server.sock.  A client sends the number of
+ *  arguments and then each argument, all in UTF-8 and each followed by a
+ *  NUL byte, and reads the command's output until the server closes the
+ *  connection.  Commands run one at a time.
+ *
+ *  The branch, head and staging area are read again before every
+ *  command.  Everything else the repository holds in memory is kept
+ *  between commands unless an entry of .gitlet has changed since the
+ *  server last ran a command, in which case the repository was modified
+ *  by someone else and is loaded from scratch.  A file counts as changed
+ *  if its stat data has, so a rewrite that keeps a file's size within
+ *  the resolution of its modification time can go unseen.
+ *  @author Kevin Wang
+ */
+class Server {
+
+    /**
+     * commands that always run in the process that receives them.
+     */
+    private static final Set<String> LOCAL = Set.of("serve", "watch",
+            "batch");
+    /**
+     * entries of .gitlet whose changes do not affect the repository.
+     */
+    private static final Set<String> IGNORED = Set.of("server.sock",
+            "watch");
+    /**
+     * directories of loose objects, whose files are never rewritten.
+     */
+    private static final Set<String> OBJECTS = Set.of("commits", "blobs",
+            "chunks", "trees");
+
+    /**
+     * metadata directory.
+     */
+    private final File gitlet;
+    /**
+     * socket file.
+     */
+    private final File socketFile;
+
+    /** The server for the repository in the current directory. */
+    Server() {
+        this(Utils.join(System.getProperty("user.dir"), ".gitlet"));
+    }
+
+    /** The server for the repository whose metadata directory is
+     *  GITLET. */
+    Server(File gitlet) {
+        this.gitlet = gitlet;
+        this.socketFile = Utils.join(gitlet, "server.sock");
+    }
+
+    /** Run the command ARGS in a server for the repository in the current
+     *  directory, copying its output to System.out.  Returns false,
+     *  having done nothing, if there is no server. */
+    static boolean forward(String... args) throws IOException {
+        if (args.length == 0 || LOCAL.contains(args[0])) {
+            return false;
+        }
+        File socket = new Server().socketFile;
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(
+                    socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (ch) {
+            OutputStream out = Channels.newOutputStream(ch);
+            out.write(request(args));
+            out.flush();
+            Channels.newInputStream(ch).transferTo(System.out);
+            System.out.flush();
+        }
+        return true;
+    }
+
+    /** Returns the encoding of the command ARGS. */
+    private static byte[] request(String... args) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(Integer.toString(args.length)
+                .getBytes(StandardCharsets.UTF_8));
+        bytes.write(0);
+        for (String arg : args) {
+            bytes.write(arg.getBytes(StandardCharsets.UTF_8));
+            bytes.write(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the command read from IN, or null if it is malformed. */
+    private static String[] readRequest(InputStream in) throws IOException {
+        String count = readField(in);
+        if (count == null) {
+            return null;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(count);
+        } catch (NumberFormatException excp) {
+            return null;
+        }
+        List<String> args = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String arg = readField(in);
+            if (arg == null) {
+                return null;
+            }
+            args.add(arg);
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Returns the next NUL-terminated field of IN, or null at the end of
+     *  IN. */
+    private static String readField(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        for (int c = in.read(); c != 0; c = in.read()) {
+            if (c < 0) {
+                return null;
+            }
+            buf.write(c);
+        }
+        return buf.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns true iff a server accepts connections on the socket. */
+    private boolean running() {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(
+                    socketFile.toPath())).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Serve commands until killed.  Prints a message and returns if
+     *  there is no repository or a server is running already. */
+    void serve() throws IOException {
+        if (!gitlet.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (socketFile.exists()) {
+            if (running()) {
+                System.out.println("A server is already running.");
+                return;
+            }
+            socketFile.delete();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketFile.toPath()));
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(socketFile::delete));
+            GitletRepo repo = null;
+            String seen = null;
+            while (true) {
+                try (SocketChannel ch = server.accept()) {
+                    String[] args = readRequest(new BufferedInputStream(
+                            Channels.newInputStream(ch)));
+                    if (args == null) {
+                        continue;
+                    }
+                    String now = fingerprint();
+                    if (repo == null || !now.equals(seen)) {
+                        repo = new GitletRepo();
+                    } else {
+                        repo.reload();
+                    }
+                    if (!run(repo, args, Channels.newOutputStream(ch))) {
+                        repo = null;
+                    }
+                    seen = fingerprint();
+                } catch (IOException excp) {
+                    repo = null;
+                }
+            }
+        }
+    }
+
+    /** Run the command ARGS on REPO, sending its output to OUT.  Returns
+     *  false if REPO must not be used again: the command failed, or the
+     *  repository did not exist when it began. */
+    private boolean run(GitletRepo repo, String[] args, OutputStream out) {
+        boolean existed = gitlet.isDirectory();
+        PrintStream stdout = System.out;
+        PrintStream client = new PrintStream(new BufferedOutputStream(out));
+        System.setOut(client);
+        try {
+            if (args.length > 0 && LOCAL.contains(args[0])) {
+                System.out.println("Cannot run " + args[0]
+                        + " in the server.");
+            } else {
+                Main.run(repo, args);
+                repo.close();
+            }
+            return existed;
+        } catch (IOException | RuntimeException excp) {
+            excp.printStackTrace(client);
+            System.err.println("gitlet: " + Arrays.toString(args)
+                    + " failed: " + excp);
+            return false;
+        } finally {
+            client.flush();
+            System.setOut(stdout);
+        }
+    }
+
+    /** Returns a string that changes whenever a file below .gitlet that
+     *  the repository depends on is created, removed, replaced or
+     *  modified, as seen in its stat data.  Files rewritten in place,
+     *  such as branches, the staging log and the pack, are seen by their
+     *  size and modification time.  The loose object directories are
+     *  statted but not listed: their files are never rewritten, and the
+     *  directories change when entries are added to or removed from
+     *  them. */
+    String fingerprint() {
+        StringBuilder result = new StringBuilder();
+        fingerprint(gitlet, "", result);
+        return result.toString();
+    }
+
+    /** Append to RESULT a line of stat data for each entry of DIR and,
+     *  recursively, of its subdirectories other than the loose object
+     *  directories, naming each with PREFIX followed by its name. */
+    private static void fingerprint(File dir, String prefix,
+                                    StringBuilder result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            String path = prefix + name;
+            if (IGNORED.contains(path)) {
+                continue;
+            }
+            File f = Utils.join(dir, name);
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        f.toPath(), BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                result.append(path).append(' ').append(attrs.size())
+                    .append(' ').append(attrs.lastModifiedTime()
+                            .to(TimeUnit.NANOSECONDS))
+                    .append(' ').append(attrs.fileKey()).append('\n');
+                if (attrs.isDirectory() && !OBJECTS.contains(path)) {
+                    fingerprint(f, path + "/", result);
+                }
+            } catch (IOException excp) {
+                result.append(path).append(" ?\n");
+            }
+        }
+    }
+}
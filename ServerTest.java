@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of how the server notices changes made by other processes.
+ *  @author Kevin Wang
+ */
+public class ServerTest {
+
+    /**
+     * metadata directory of the repository.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Lay out a metadata directory with a branch, a staging log, a
+     *  pack and a loose blob. */
+    @Before
+    public void layout() {
+        tmp.write("HEAD", "head");
+        tmp.write("branches/master", "commit 1");
+        tmp.write("staging/log", "add a");
+        tmp.write("pack/pack.dat", "objects");
+        tmp.write("blobs/" + Utils.sha1("a"), "a");
+    }
+
+    /** Overwrite the start of the file NAME with TEXT in place, keeping
+     *  its modification time unless KEEPTIME is false. */
+    private void rewrite(String name, String text, boolean keepTime)
+        throws IOException {
+        FileTime time = Files.getLastModifiedTime(tmp.file(name).toPath());
+        try (RandomAccessFile f = new RandomAccessFile(tmp.file(name), "rw")) {
+            f.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        if (keepTime) {
+            Files.setLastModifiedTime(tmp.file(name).toPath(), time);
+        }
+    }
+
+    /** Files rewritten in place inside subdirectories change the
+     *  fingerprint, whether they grow or only get a new time. */
+    @Test
+    public void nestedRewrites() throws IOException {
+        Server server = new Server(tmp.getRoot());
+        String before = server.fingerprint();
+        assertEquals(before, server.fingerprint());
+
+        rewrite("branches/master", "commit 2 and more", true);
+        String after = server.fingerprint();
+        assertNotEquals(before, after);
+
+        before = after;
+        Files.setLastModifiedTime(tmp.file("staging/log").toPath(),
+                FileTime.fromMillis(12345000L));
+        after = server.fingerprint();
+        assertNotEquals(before, after);
+
+        before = after;
+        rewrite("pack/pack.dat", "objects and more", false);
+        after = server.fingerprint();
+        assertNotEquals(before, after);
+    }
+
+    /** Loose objects count through their directory, and the server's
+     *  own files do not count. */
+    @Test
+    public void objectsAndIgnored() {
+        Server server = new Server(tmp.getRoot());
+        String before = server.fingerprint();
+        tmp.write("blobs/" + Utils.sha1("b"), "b");
+        String after = server.fingerprint();
+        assertNotEquals(before, after);
+        assertFalse(after.contains(Utils.sha1("b")));
+
+        before = after;
+        tmp.write("server.sock", "");
+        tmp.write("watch/log", "changed");
+        assertEquals(before, server.fingerprint());
+    }
+
+    /** Returns the output of the command ARGS, sent as a client would
+     *  to the server listening on SOCKET. */
+    private static String send(File socket, String... args)
+        throws IOException {
+        try (SocketChannel ch = SocketChannel.open(
+                UnixDomainSocketAddress.of(socket.toPath()))) {
+            OutputStream out = Channels.newOutputStream(ch);
+            out.write(Integer.toString(args.length)
+                    .getBytes(StandardCharsets.UTF_8));
+            out.write(0);
+            for (String arg : args) {
+                out.write(arg.getBytes(StandardCharsets.UTF_8));
+                out.write(0);
+            }
+            out.flush();
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            Channels.newInputStream(ch).transferTo(result);
+            return result.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Returns true iff a server accepts connections on SOCKET. */
+    private static boolean accepts(File socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()))
+                .close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Commands sent to a running server run on its repository, which
+     *  sees changes made by another process before the next command. */
+    @Test
+    public void roundTrip() throws Exception {
+        String userDir = System.getProperty("user.dir");
+        File work = tmp.file("work");
+        work.mkdir();
+        System.setProperty("user.dir", work.getPath());
+        try {
+            GitletRepoTest.run("init");
+            Utils.writeContents(Utils.join(work, "a.txt"), "a");
+            File socket = Utils.join(work, ".gitlet", "server.sock");
+            Thread thread = new Thread(() -> {
+                try {
+                    new Server(Utils.join(work, ".gitlet")).serve();
+                } catch (IOException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            for (int i = 0; i < 500 && !accepts(socket); i += 1) {
+                Thread.sleep(10);
+            }
+
+            assertEquals("", send(socket, "add", "a.txt"));
+            assertEquals("", send(socket, "commit", "add a"));
+            assertTrue(send(socket, "log").contains("add a"));
+            assertEquals("Cannot run serve in the server.\n",
+                    send(socket, "serve"));
+
+            GitletRepoTest.run("branch", "other");
+            assertEquals("*master\nother", GitletRepoTest.section(
+                    send(socket, "status"), "Branches"));
+        } finally {
+            System.setProperty("user.dir", userDir);
+        }
+    }
+}
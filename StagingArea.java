@@ -0,0 +1,378 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** The staging area: the files staged for addition, each with its blob
+ *  id, and the files staged for removal, each with the blob id it had.
+ *  It is kept in .gitlet/staging/log, an append-only log of records, so
+ *  that staging one more file writes one record however many are staged
+ *  already.  The log starts with a magic number and version; a record is
+ *  its length as a varint, an operation byte, a path, an id for the
+ *  operations that need one, and a CRC-32 of all that.  The maps are
+ *  rebuilt by replaying the log, which stops at the first incomplete or
+ *  damaged record; later appends overwrite it.
+ *
+ *  Changes are held in memory until published.  When they are the only
+ *  change to the repository they are appended; otherwise, and whenever
+ *  the staging area is cleared or the log holds more than twice as many
+ *  records as entries, the log is compacted: rewritten with one record
+ *  per entry, as one of the writes of a journal commit.  Repositories
+ *  staged in the older addition and removal files are read from those
+ *  and moved to the log at the first change.
+ *  @author Kevin Wang
+ */
+class StagingArea {
+
+    /**
+     * log magic.
+     */
+    private static final int MAGIC = 0x47535447;
+    /**
+     * log version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * log header length.
+     */
+    private static final int HEADER = 5;
+    /**
+     * records a log may hold beyond twice its entries before it is
+     * compacted.
+     */
+    private static final int SLACK = 1024;
+    /**
+     * operation: stage a file for addition.
+     */
+    private static final byte ADD = 'a';
+    /**
+     * operation: unstage a file staged for addition.
+     */
+    private static final byte UNADD = 'A';
+    /**
+     * operation: stage a file for removal.
+     */
+    private static final byte REMOVE = 'r';
+    /**
+     * operation: unstage a file staged for removal.
+     */
+    private static final byte UNREMOVE = 'R';
+
+    /**
+     * the log.
+     */
+    private final File logFile;
+    /**
+     * older file of files staged for addition.
+     */
+    private final File legacyAddition;
+    /**
+     * older file of files staged for removal.
+     */
+    private final File legacyRemoval;
+    /**
+     * files staged for addition.
+     */
+    private final HashMap<String, String> addition = new HashMap<>();
+    /**
+     * files staged for removal.
+     */
+    private final HashMap<String, String> removal = new HashMap<>();
+    /**
+     * records not yet published.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    /**
+     * true iff the unpublished changes require compaction.
+     */
+    private boolean rewrite;
+    /**
+     * true iff the log file was read and may be appended to.
+     */
+    private boolean appendable;
+    /**
+     * records in the log, counting unpublished ones.
+     */
+    private int records;
+    /**
+     * length of the valid part of the log file.
+     */
+    private long length;
+    /**
+     * file key of the log file as loaded, or null.
+     */
+    private Object loadedKey;
+
+    /** The staging area kept in directory DIR. */
+    StagingArea(File dir) {
+        this.logFile = Utils.join(dir, "log");
+        this.legacyAddition = Utils.join(dir, "addition");
+        this.legacyRemoval = Utils.join(dir, "removal");
+    }
+
+    /** Returns the files staged for addition, with their blob ids. */
+    Map<String, String> additions() {
+        return Collections.unmodifiableMap(addition);
+    }
+
+    /** Returns the files staged for removal, with their blob ids. */
+    Map<String, String> removals() {
+        return Collections.unmodifiableMap(removal);
+    }
+
+    /** Stage PATH for addition as blob ID. */
+    void add(String path, String id) {
+        if (!id.equals(addition.put(path, id))) {
+            record(ADD, path, id);
+        }
+    }
+
+    /** Unstage PATH from addition. */
+    void unadd(String path) {
+        if (addition.remove(path) != null) {
+            record(UNADD, path, null);
+        }
+    }
+
+    /** Stage PATH, which held blob ID, for removal. */
+    void remove(String path, String id) {
+        if (!id.equals(removal.put(path, id))) {
+            record(REMOVE, path, id);
+        }
+    }
+
+    /** Unstage PATH from removal. */
+    void unremove(String path) {
+        if (removal.remove(path) != null) {
+            record(UNREMOVE, path, null);
+        }
+    }
+
+    /** Unstage everything. */
+    void clear() {
+        addition.clear();
+        removal.clear();
+        pending.reset();
+        rewrite = true;
+    }
+
+    /** Returns true iff there are unpublished changes. */
+    boolean changed() {
+        return rewrite || pending.size() > 0;
+    }
+
+    /** Returns true iff the unpublished changes may be appended to the
+     *  log rather than compacted. */
+    boolean canAppend() {
+        return !rewrite && appendable
+            && records <= 2 * (addition.size() + removal.size()) + SLACK;
+    }
+
+    /** Append the unpublished changes to the log, syncing it iff
+     *  SYNC. */
+    void append(boolean sync) {
+        byte[] bytes = pending.toByteArray();
+        try (FileChannel ch = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.WRITE)) {
+            ch.truncate(length);
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            for (long pos = length; buf.hasRemaining();
+                 pos += ch.write(buf, pos)) {
+                continue;
+            }
+            if (sync) {
+                ch.force(false);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        length += bytes.length;
+        pending.reset();
+        loadedKey = fileKey();
+    }
+
+    /** Returns the writes that replace the log with a compacted one
+     *  holding the current entries, and remove any older staging files.
+     *  They must be published, as by a journal commit, before the
+     *  staging area is used again. */
+    Map<File, byte[]> compact() {
+        pending.reset();
+        records = 0;
+        for (Map.Entry<String, String> e
+                 : new TreeMap<>(addition).entrySet()) {
+            record(ADD, e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e
+                 : new TreeMap<>(removal).entrySet()) {
+            record(REMOVE, e.getKey(), e.getValue());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            pending.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        LinkedHashMap<File, byte[]> result = new LinkedHashMap<>();
+        result.put(logFile, bytes.toByteArray());
+        if (legacyAddition.exists()) {
+            result.put(legacyAddition, null);
+        }
+        if (legacyRemoval.exists()) {
+            result.put(legacyRemoval, null);
+        }
+        pending.reset();
+        rewrite = false;
+        appendable = true;
+        length = bytes.size();
+        loadedKey = null;
+        return result;
+    }
+
+    /** Read the staging area from its files, unless there are unpublished
+     *  changes or the log has not changed since it was read. */
+    void load() {
+        if (changed()) {
+            return;
+        }
+        Object key = fileKey();
+        if (key != null && key.equals(loadedKey)
+                && logFile.length() == length) {
+            return;
+        }
+        addition.clear();
+        removal.clear();
+        records = 0;
+        length = 0;
+        appendable = false;
+        loadedKey = key;
+        if (!logFile.isFile()) {
+            if (legacyAddition.isFile()) {
+                addition.putAll(Codec.decodeMap(
+                        Utils.readContents(legacyAddition)));
+                removal.putAll(Codec.decodeMap(
+                        Utils.readContents(legacyRemoval)));
+            }
+            return;
+        }
+        replay(Utils.readContents(logFile));
+    }
+
+    /** Rebuild the maps from the log BYTES. */
+    private void replay(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER || buf.getInt() != MAGIC
+                || buf.get() != VERSION) {
+            return;
+        }
+        appendable = true;
+        length = HEADER;
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            int len = readVarint(buf);
+            if (len <= 0 || buf.remaining() < len + 4) {
+                break;
+            }
+            int body = buf.position();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, start, body - start + len);
+            buf.position(body + len);
+            if (buf.getInt() != (int) crc.getValue()
+                    || !apply(bytes, body, len)) {
+                break;
+            }
+            records += 1;
+            length = buf.position();
+        }
+    }
+
+    /** Apply the record body of length LEN at offset OFF of BYTES to the
+     *  maps, returning false if it is malformed. */
+    private boolean apply(byte[] bytes, int off, int len) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes, off, len))) {
+            byte op = in.readByte();
+            String path = Codec.readString(in);
+            if (op == ADD) {
+                addition.put(path, Codec.readId(in));
+            } else if (op == UNADD) {
+                addition.remove(path);
+            } else if (op == REMOVE) {
+                removal.put(path, Codec.readId(in));
+            } else if (op == UNREMOVE) {
+                removal.remove(path);
+            } else {
+                return false;
+            }
+            return path != null;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Add a record of operation OP on PATH, with blob ID if not null, to
+     *  the unpublished changes. */
+    private void record(byte op, String path, String id) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeByte(op);
+            Codec.writeString(out, path);
+            if (id != null) {
+                Codec.writeId(out, id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ByteArrayOutputStream rec = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(rec)) {
+            Codec.writeVarint(out, body.size());
+            body.writeTo(out);
+            CRC32 crc = new CRC32();
+            crc.update(rec.toByteArray());
+            out.writeInt((int) crc.getValue());
+            rec.writeTo(pending);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        records += 1;
+    }
+
+    /** Returns a varint read from BUF, or -1 if it is incomplete. */
+    private static int readVarint(ByteBuffer buf) {
+        int result = 0;
+        for (int shift = 0; shift < 32 && buf.hasRemaining(); shift += 7) {
+            int b = buf.get() & 0xff;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the file key of the log file, or null if it has none. */
+    private Object fileKey() {
+        try {
+            return Files.readAttributes(logFile.toPath(),
+                    BasicFileAttributes.class).fileKey();
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
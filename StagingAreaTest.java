@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of StagingArea and of reading a damaged staging log.
+ *  @author Kevin Wang
+ */
+public class StagingAreaTest {
+
+    /**
+     * directory of the staging log.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /**
+     * lengths of the log after each publish of history.
+     */
+    private final ArrayList<Long> lengths = new ArrayList<>();
+    /**
+     * additions and removals after each publish of history.
+     */
+    private final ArrayList<List<Map<String, String>>> states =
+        new ArrayList<>();
+
+    /** Publish the changes to STAGE, appending them if it can and
+     *  compacting the log otherwise. */
+    private static void publish(StagingArea stage) {
+        if (stage.canAppend()) {
+            stage.append(false);
+            return;
+        }
+        for (Map.Entry<File, byte[]> e : stage.compact().entrySet()) {
+            if (e.getValue() == null) {
+                e.getKey().delete();
+            } else {
+                Utils.writeContents(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Returns the additions and removals of STAGE. */
+    private static List<Map<String, String>> state(StagingArea stage) {
+        return List.of(new HashMap<>(stage.additions()),
+                new HashMap<>(stage.removals()));
+    }
+
+    /** Returns the staging area as read from its log. */
+    private StagingArea reread() {
+        StagingArea stage = new StagingArea(tmp.getRoot());
+        stage.load();
+        return stage;
+    }
+
+    /** Stage a history of single changes, publishing each, and record
+     *  the log length and state after each in lengths and states.
+     *  Returns the whole log. */
+    private byte[] history() {
+        StagingArea stage = new StagingArea(tmp.getRoot());
+        stage.load();
+        for (int i = 0; i < 12; i += 1) {
+            String path = "dir/file" + (i % 5) + ".txt";
+            String id = Utils.sha1("v" + i);
+            if (i % 4 == 3) {
+                stage.unadd(path);
+            } else if (i % 3 == 2) {
+                stage.remove(path, id);
+            } else if (i % 7 == 6) {
+                stage.unremove("dir/file" + ((i - 4) % 5) + ".txt");
+            } else {
+                stage.add(path, id);
+            }
+            publish(stage);
+            lengths.add(tmp.file("log").length());
+            states.add(state(stage));
+        }
+        return Utils.readContents(tmp.file("log"));
+    }
+
+    /** Returns the state recorded after the last publish that fits in
+     *  LEN bytes of log, or the empty state if none does. */
+    private List<Map<String, String>> stateAt(long len) {
+        List<Map<String, String>> result =
+            List.of(new HashMap<>(), new HashMap<>());
+        for (int k = 0; k < lengths.size() && lengths.get(k) <= len; k += 1) {
+            result = states.get(k);
+        }
+        return result;
+    }
+
+    /** Changes published by appending read back from the log. */
+    @Test
+    public void roundTrip() {
+        byte[] whole = history();
+        assertTrue(lengths.get(lengths.size() - 1) > lengths.get(0));
+        assertEquals(states.get(states.size() - 1), state(reread()));
+        assertEquals(whole.length, (long) lengths.get(lengths.size() - 1));
+    }
+
+    /** A log cut off at any length reads back as the changes whose
+     *  records it holds whole, and the next change is appended over the
+     *  incomplete record. */
+    @Test
+    public void truncatedLog() {
+        byte[] whole = history();
+        for (int len = 0; len < whole.length; len += 1) {
+            Utils.writeContents(tmp.file("log"), Arrays.copyOf(whole, len));
+            StagingArea stage = reread();
+            List<Map<String, String>> expected = stateAt(len);
+            assertEquals(expected, state(stage));
+
+            stage.add("new.txt", Utils.sha1("new"));
+            publish(stage);
+            HashMap<String, String> added = new HashMap<>(expected.get(0));
+            added.put("new.txt", Utils.sha1("new"));
+            assertEquals(List.of(added, expected.get(1)), state(reread()));
+        }
+    }
+
+    /** A log with a damaged byte reads back as the changes recorded
+     *  before the damaged record, or as empty if its header is damaged;
+     *  the next change then rewrites the log. */
+    @Test
+    public void corruptLog() {
+        byte[] whole = history();
+        for (int i = 0; i < whole.length; i += 1) {
+            byte[] bad = whole.clone();
+            bad[i] ^= 0x10;
+            Utils.writeContents(tmp.file("log"), bad);
+            StagingArea stage = reread();
+            long before = 0;
+            for (long len : lengths) {
+                if (len <= i) {
+                    before = len;
+                }
+            }
+            List<Map<String, String>> expected = stateAt(before);
+            assertEquals(expected, state(stage));
+
+            stage.add("new.txt", Utils.sha1("new"));
+            publish(stage);
+            HashMap<String, String> added = new HashMap<>(expected.get(0));
+            added.put("new.txt", Utils.sha1("new"));
+            assertEquals(List.of(added, expected.get(1)), state(reread()));
+        }
+    }
+}
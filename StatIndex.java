@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** A persistent cache, like git's index, of the blob id of each working
+ *  file hashed so far, keyed by path and validated by the file's size,
+ *  modification time and file key (device and inode).  A file whose
+ *  stat data is unchanged is not read again.
+ *
+ *  An entry recorded for a file modified no earlier than the index was
+ *  last written is "racy": the file could have changed again within the
+ *  same timestamp tick without its stat data changing.  Racy entries
+ *  are never trusted; the file is rehashed instead.  Lookups may be made
+ *  from several threads.
+ *  @author Kevin Wang
+ */
+class StatIndex {
+
+    /**
+     * file magic.
+     */
+    private static final int MAGIC = 0x47494458;
+    /**
+     * file version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * index file.
+     */
+    private final File file;
+    /**
+     * entries by path, or null until loaded.
+     */
+    private volatile ConcurrentHashMap<String, Entry> entries;
+    /**
+     * modification time of the index file when last read or written, in
+     * ns.
+     */
+    private long writtenAt;
+    /**
+     * true iff entries differ from the file.
+     */
+    private volatile boolean dirty;
+
+    /** The index stored in FILE. */
+    StatIndex(File f) {
+        this.file = f;
+    }
+
+    /** Returns the blob id of the working file F, recorded under PATH,
+     *  hashing F only if its stat data has changed. */
+    String sha1(String path, File f) {
+        load();
+        BasicFileAttributes attrs = stat(f);
+        Entry e = entries.get(path);
+        if (e != null && e.matches(attrs) && e.mtime < writtenAt) {
+            return e.sha1;
+        }
+        String result = Hasher.ids().hash(f);
+        entries.put(path, new Entry(attrs, result));
+        dirty = true;
+        return result;
+    }
+
+    /** Record that the working file F, under PATH, now holds blob
+     *  SHA1, as after writing it from that blob. */
+    void update(String path, File f, String sha1) {
+        load();
+        entries.put(path, new Entry(stat(f), sha1));
+        dirty = true;
+    }
+
+    /** Forget PATH. */
+    void remove(String path) {
+        load();
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Write the index back if it has changed, replacing the old file
+     *  with a single rename. */
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                e.getValue().write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            writtenAt = Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /** Read the index file, if it has not been read yet.  A missing or
+     *  unreadable index is treated as empty. */
+    private synchronized void load() {
+        if (entries != null) {
+            return;
+        }
+        ConcurrentHashMap<String, Entry> loaded = new ConcurrentHashMap<>();
+        if (file.isFile()) {
+            read(loaded);
+        }
+        entries = loaded;
+    }
+
+    /** Add the entries in the index file to RESULT, adding none if the
+     *  file cannot be read. */
+    private void read(ConcurrentHashMap<String, Entry> result) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        file.toPath())))) {
+            writtenAt = Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                result.put(path, new Entry(in));
+            }
+        } catch (IOException excp) {
+            result.clear();
+        }
+    }
+
+    /** Returns the attributes of F. */
+    private static BasicFileAttributes stat(File f) {
+        try {
+            return Files.readAttributes(f.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The stat data and blob id recorded for one file. */
+    private static class Entry {
+
+        /**
+         * size in bytes.
+         */
+        private final long size;
+        /**
+         * modification time in ns.
+         */
+        private final long mtime;
+        /**
+         * device and inode, or "".
+         */
+        private final String key;
+        /**
+         * blob id.
+         */
+        private final String sha1;
+
+        /** An entry for a file with attributes ATTRS holding blob
+         *  SHA. */
+        Entry(BasicFileAttributes attrs, String sha) {
+            this.size = attrs.size();
+            this.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            this.key = keyOf(attrs);
+            this.sha1 = sha;
+        }
+
+        /** An entry read from IN. */
+        Entry(DataInputStream in) throws IOException {
+            this.size = in.readLong();
+            this.mtime = in.readLong();
+            this.key = in.readUTF();
+            this.sha1 = in.readUTF();
+        }
+
+        /** Write this entry to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeUTF(key);
+            out.writeUTF(sha1);
+        }
+
+        /** Returns true iff ATTRS has the stat data recorded here. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                && mtime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && key.equals(keyOf(attrs));
+        }
+
+        /** The file key of ATTRS as a string. */
+        private static String keyOf(BasicFileAttributes attrs) {
+            Object k = attrs.fileKey();
+            return k == null ? "" : k.toString();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of StatIndex and of when it trusts its entries.
+ *  @author Kevin Wang
+ */
+public class StatIndexTest {
+
+    /**
+     * working files and index file.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the blob id of TEXT. */
+    private static String id(String text) {
+        return Hasher.ids().hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Overwrite F with TEXT in place, the same size as before, and set
+     *  its modification time to MILLIS, so that its stat data is as it
+     *  was. */
+    private static void sneak(File f, String text, long millis)
+        throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(millis));
+    }
+
+    /** A file whose stat data is unchanged since an older index was
+     *  written is not read again, and one whose data has changed is. */
+    @Test
+    public void trustsUnchanged() throws IOException {
+        long past = System.currentTimeMillis() - 60000;
+        File f = tmp.file("a.txt");
+        tmp.write("a.txt", "aaaa");
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(past));
+        StatIndex index = new StatIndex(tmp.file("index"));
+        assertEquals(id("aaaa"), index.sha1("a.txt", f));
+        index.save();
+
+        sneak(f, "bbbb", past);
+        StatIndex reread = new StatIndex(tmp.file("index"));
+        assertEquals(id("aaaa"), reread.sha1("a.txt", f));
+
+        tmp.write("a.txt", "ccccc");
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(past));
+        assertEquals(id("ccccc"), reread.sha1("a.txt", f));
+        sneak(f, "ddddd", past + 1000);
+        assertEquals(id("ddddd"), reread.sha1("a.txt", f));
+    }
+
+    /** An entry for a file modified no earlier than the index was
+     *  written is racy, and the file is read again. */
+    @Test
+    public void racyEntries() throws IOException {
+        long future = System.currentTimeMillis() + 60000;
+        File f = tmp.file("a.txt");
+        tmp.write("a.txt", "aaaa");
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(future));
+        StatIndex index = new StatIndex(tmp.file("index"));
+        assertEquals(id("aaaa"), index.sha1("a.txt", f));
+        index.save();
+
+        sneak(f, "bbbb", future);
+        assertEquals(id("bbbb"), new StatIndex(tmp.file("index"))
+                .sha1("a.txt", f));
+        sneak(f, "cccc", future);
+        assertEquals(id("cccc"), index.sha1("a.txt", f));
+    }
+
+    /** Files recorded as written from a blob are trusted once the index
+     *  is saved after them, and forgotten paths are read again. */
+    @Test
+    public void updateAndRemove() throws IOException {
+        long past = System.currentTimeMillis() - 60000;
+        File f = tmp.file("a.txt");
+        tmp.write("a.txt", "aaaa");
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(past));
+        StatIndex index = new StatIndex(tmp.file("index"));
+        index.update("a.txt", f, id("zzzz"));
+        index.save();
+        assertEquals(id("zzzz"),
+                new StatIndex(tmp.file("index")).sha1("a.txt", f));
+
+        index.remove("a.txt");
+        index.save();
+        assertEquals(id("aaaa"),
+                new StatIndex(tmp.file("index")).sha1("a.txt", f));
+    }
+}
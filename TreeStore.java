@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Tree objects: content-addressed directory listings, one per
+ *  directory, so that commits can share every directory they did not
+ *  change.  A tree maps names to object ids; the name of a subdirectory
+ *  ends in "/" and maps to its tree, any other name maps to a blob.  A
+ *  tree is stored in the map encoding of Codec, and its id is the hash
+ *  of that encoding.  Paths are relative and separated by "/".
+ *  @author Kevin Wang
+ */
+class TreeStore {
+
+    /**
+     * decoded trees kept in memory.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * where trees are stored.
+     */
+    private final ObjectStore objects;
+    /**
+     * recently read or written trees by id.
+     */
+    private final ObjectCache<TreeMap<String, String>> cache =
+        new ObjectCache<>(CACHE_SIZE);
+
+    /** A tree store keeping its trees in OBJECTS. */
+    TreeStore(ObjectStore store) {
+        this.objects = store;
+    }
+
+    /** Store the tree holding FILES, a map from path to blob id, and
+     *  return its id. */
+    String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the id of the tree that results from applying CHANGES to
+     *  the tree ROOT, or to an empty tree if ROOT is null.  CHANGES maps
+     *  paths to their new blob ids, or to null for paths to remove.  Only
+     *  the trees along changed paths are rewritten; every other subtree
+     *  is shared with ROOT. */
+    String update(String root, Map<String, String> changes) {
+        return store(apply(root, changes));
+    }
+
+    /** Returns the entries of tree TREE (empty if null) after applying
+     *  CHANGES, storing any changed subtrees. */
+    private TreeMap<String, String> apply(String tree,
+                                         Map<String, String> changes) {
+        TreeMap<String, String> entries = tree == null ? new TreeMap<>()
+            : new TreeMap<>(read(tree));
+        TreeMap<String, HashMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash + 1),
+                        k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> e
+                 : below.entrySet()) {
+            String dir = e.getKey();
+            TreeMap<String, String> child = apply(entries.get(dir),
+                    e.getValue());
+            if (child.isEmpty()) {
+                entries.remove(dir);
+            } else {
+                entries.put(dir, store(child));
+            }
+        }
+        return entries;
+    }
+
+    /** Store the tree with ENTRIES, unless it exists already, and return
+     *  its id. */
+    private String store(TreeMap<String, String> entries) {
+        byte[] bytes = Codec.encodeMap(entries);
+        String id = Hasher.ids().hash(bytes);
+        if (!objects.contains(ObjectStore.TREE, id)) {
+            objects.write(ObjectStore.TREE, id, bytes);
+        }
+        cache.put(id, entries);
+        return id;
+    }
+
+    /** Returns the entries of tree ID. */
+    private TreeMap<String, String> read(String id) {
+        TreeMap<String, String> result = cache.get(id);
+        if (result == null) {
+            result = new TreeMap<>(Codec.decodeMap(
+                    objects.read(ObjectStore.TREE, id)));
+            cache.put(id, result);
+        }
+        return result;
+    }
+
+    /** Returns every file below tree ROOT, as a map from path to blob
+     *  id. */
+    HashMap<String, String> flatten(String root) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(root, "", result);
+        return result;
+    }
+
+    /** Add the files below tree TREE to RESULT, prefixing their paths with
+     *  PREFIX. */
+    private void flatten(String tree, String prefix,
+                         HashMap<String, String> result) {
+        for (Map.Entry<String, String> e : read(tree).entrySet()) {
+            if (e.getKey().endsWith("/")) {
+                flatten(e.getValue(), prefix + e.getKey(), result);
+            } else {
+                result.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Returns the files that differ between trees A and B, each mapped
+     *  to its blob ids in A and in B, either of which is null if the file
+     *  is absent there.  Subtrees with equal ids are not read. */
+    HashMap<String, String[]> diff(String a, String b) {
+        HashMap<String, String[]> result = new HashMap<>();
+        diff(a, b, "", result);
+        return result;
+    }
+
+    /** Add the differences between trees A and B, either of which may be
+     *  null for an empty tree, to RESULT, prefixing paths with PREFIX. */
+    private void diff(String a, String b, String prefix,
+                      HashMap<String, String[]> result) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Map<String, String> left = a == null ? Map.of() : read(a);
+        Map<String, String> right = b == null ? Map.of() : read(b);
+        TreeSet<String> names = new TreeSet<>(left.keySet());
+        names.addAll(right.keySet());
+        for (String name : names) {
+            String x = left.get(name);
+            String y = right.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            } else if (name.endsWith("/")) {
+                diff(x, y, prefix + name, result);
+            } else {
+                result.put(prefix + name, new String[] {x, y});
+            }
+        }
+    }
+
+    /** Returns the files that differ between the flat file maps A and B,
+     *  in the form returned by diff on trees. */
+    static HashMap<String, String[]> diff(Map<String, String> a,
+                                          Map<String, String> b) {
+        HashMap<String, String[]> result = new HashMap<>();
+        for (Map.Entry<String, String> e : a.entrySet()) {
+            String y = b.get(e.getKey());
+            if (!e.getValue().equals(y)) {
+                result.put(e.getKey(), new String[] {e.getValue(), y});
+            }
+        }
+        for (Map.Entry<String, String> e : b.entrySet()) {
+            if (!a.containsKey(e.getKey())) {
+                result.put(e.getKey(), new String[] {null, e.getValue()});
+            }
+        }
+        return result;
+    }
+}
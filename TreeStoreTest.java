@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of TreeStore.
+ *  @author Kevin Wang
+ */
+public class TreeStoreTest {
+
+    /**
+     * metadata directory of the object store.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns a map of the files of a small project, with ids made up
+     *  from their paths and VERSION. */
+    private static HashMap<String, String> files(int version) {
+        HashMap<String, String> result = new HashMap<>();
+        for (String path : new String[] {"README", "src/main/A.java",
+                "src/main/B.java", "src/test/ATest.java", "docs/x/y/z.md"}) {
+            result.put(path, Utils.sha1(path + version));
+        }
+        return result;
+    }
+
+    /** Returns the number of trees stored. */
+    private int trees() {
+        return new ObjectStore(tmp.getRoot()).ids(ObjectStore.TREE).size();
+    }
+
+    /** A tree flattens back to the files it was written from, and its id
+     *  depends only on them. */
+    @Test
+    public void roundTrip() {
+        TreeStore trees = new TreeStore(new ObjectStore(tmp.getRoot()));
+        String root = trees.write(files(0));
+        assertEquals(files(0), trees.flatten(root));
+        assertEquals(files(0), new TreeStore(new ObjectStore(tmp.getRoot()))
+                .flatten(root));
+        assertEquals(root, trees.update(trees.write(Map.of()), files(0)));
+        assertEquals(Map.of(), trees.flatten(trees.write(Map.of())));
+    }
+
+    /** Changing one file rewrites only the trees on its path, and
+     *  removing the last file of a directory removes the directory. */
+    @Test
+    public void sharing() {
+        TreeStore trees = new TreeStore(new ObjectStore(tmp.getRoot()));
+        String root = trees.write(files(0));
+        int before = trees();
+        HashMap<String, String> change = new HashMap<>();
+        change.put("src/main/A.java", Utils.sha1("new"));
+        String next = trees.update(root, change);
+        assertEquals(before + 3, trees());
+
+        HashMap<String, String> expected = files(0);
+        expected.putAll(change);
+        assertEquals(expected, trees.flatten(next));
+        assertEquals(root, trees.update(next,
+                Map.of("src/main/A.java", files(0).get("src/main/A.java"))));
+
+        HashMap<String, String> removal = new HashMap<>();
+        removal.put("docs/x/y/z.md", null);
+        expected.remove("docs/x/y/z.md");
+        assertEquals(expected, trees.flatten(trees.update(next, removal)));
+    }
+
+    /** The difference between trees is the difference between their
+     *  files, found without reading the subtrees they share. */
+    @Test
+    public void diff() {
+        TreeStore trees = new TreeStore(new ObjectStore(tmp.getRoot()));
+        String root = trees.write(files(0));
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("src/main/B.java", Utils.sha1("b"));
+        changes.put("src/test/ATest.java", null);
+        changes.put("src/test/BTest.java", Utils.sha1("bt"));
+        changes.put("NEWS", Utils.sha1("news"));
+        String next = trees.update(root, changes);
+        HashMap<String, String> after = new HashMap<>(files(0));
+        after.putAll(changes);
+        after.remove("src/test/ATest.java");
+
+        HashMap<String, String[]> expected =
+            TreeStore.diff(files(0), after);
+        String docs = trees.update(null, Map.of("x/y/z.md",
+                files(0).get("docs/x/y/z.md")));
+        assertTrue(tmp.file("trees/" + docs).delete());
+        HashMap<String, String[]> found =
+            new TreeStore(new ObjectStore(tmp.getRoot())).diff(root, next);
+        assertEquals(expected.keySet(), found.keySet());
+        for (String path : expected.keySet()) {
+            assertArrayEquals(expected.get(path), found.get(path));
+        }
+        assertTrue(trees.diff(next, next).isEmpty());
+    }
+}
@@ -12,7 +12,14 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, GitletRepoTest.class,
+                PackFileTest.class, DeltaTest.class, ChunkerTest.class,
+                CommitGraphTest.class, PrefixIndexTest.class,
+                CodecTest.class, JournalTest.class, StagingAreaTest.class,
+                ServerTest.class, WatcherTest.class, BlobTest.class,
+                StatIndexTest.class, CheckoutEngineTest.class,
+                MessageIndexTest.class, TreeStoreTest.class,
+                WorkTreeTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -0,0 +1,404 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** A filesystem monitor for the working tree, and the means for commands
+ *  to learn from it which paths changed.  The monitor, run by the watch
+ *  command, holds a lock on .gitlet/watch/lock while it runs and appends
+ *  to .gitlet/watch/log one line per event: the path that changed,
+ *  relative to the root, or "!overflow" if events were lost.  The first
+ *  line, "!start ID", identifies the run.  Once the log grows past a
+ *  limit the monitor starts a new run in a fresh log, which replaces the
+ *  old one with a single rename, and then ends the old log with a
+ *  "!rollover" line; a command that was following it moves on to the
+ *  new log, and must scan the whole tree once since it is a new run.
+ *
+ *  Events arrive late, so a command first synchronizes: it creates a
+ *  cookie file in .gitlet/watch/cookies, which the monitor answers with
+ *  a "!cookie NAME" line once every event before it has been logged.
+ *  Everything logged up to that line is then known to be complete.
+ *  @author Kevin Wang
+ */
+class Watcher {
+
+    /**
+     * how long a command waits for its cookie, in ms.
+     */
+    private static final long SYNC_TIMEOUT = 2000;
+    /**
+     * default size of the log, in bytes, past which a new run begins.
+     */
+    static final long LOG_LIMIT = 1 << 20;
+    /**
+     * name of the metadata directory, which is never watched.
+     */
+    private static final String META = ".gitlet";
+
+    /**
+     * working tree root.
+     */
+    private final Path root;
+    /**
+     * .gitlet/watch.
+     */
+    private final File dir;
+    /**
+     * monitor lock.
+     */
+    private final File lockFile;
+    /**
+     * event log.
+     */
+    private final File logFile;
+    /**
+     * cookie directory.
+     */
+    private final File cookies;
+    /**
+     * size of the log past which a new run begins.
+     */
+    private final long logLimit;
+
+    /** The monitor of the working tree at ROOTDIR, keeping its files in
+     *  WATCHDIR. */
+    Watcher(File rootDir, File watchDir) {
+        this(rootDir, watchDir, LOG_LIMIT);
+    }
+
+    /** The monitor of the working tree at ROOTDIR, keeping its files in
+     *  WATCHDIR, that begins a new run once its log holds more than
+     *  LIMIT bytes. */
+    Watcher(File rootDir, File watchDir, long limit) {
+        this.logLimit = limit;
+        this.root = rootDir.toPath().toAbsolutePath().normalize();
+        this.dir = watchDir;
+        this.lockFile = Utils.join(watchDir, "lock");
+        this.logFile = Utils.join(watchDir, "log");
+        this.cookies = Utils.join(watchDir, "cookies");
+    }
+
+    /** Returns true iff a monitor is running for this working tree, in
+     *  this process or another. */
+    boolean running() {
+        if (!lockFile.isFile()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.WRITE)) {
+            FileLock lock = ch.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** The result of a synchronization with the monitor. */
+    static class Changes {
+        /**
+         * id of the monitor run.
+         */
+        private final String id;
+        /**
+         * log offset up to which changes have been read.
+         */
+        private final long offset;
+        /**
+         * paths changed since the offset synchronized from.
+         */
+        private final HashSet<String> paths;
+
+        /** Changes PATHS read from run RUNID up to log offset END. */
+        Changes(String runId, long end, HashSet<String> changed) {
+            this.id = runId;
+            this.offset = end;
+            this.paths = changed;
+        }
+
+        /** Returns the id of the monitor run. */
+        String id() {
+            return id;
+        }
+
+        /** Returns the log offset to synchronize from next time. */
+        long offset() {
+            return offset;
+        }
+
+        /** Returns the changed paths. */
+        HashSet<String> paths() {
+            return paths;
+        }
+    }
+
+    /** Returns the paths changed since offset SINCE of monitor run ID,
+     *  an offset returned by an earlier sync.  Returns changes with a null
+     *  set of paths if they cannot be known, because no monitor is
+     *  running, a different run is logging, ID is null, or events were
+     *  lost or the log was rolled over; the caller must then scan the
+     *  whole tree.  Returns null if there is no monitor at all. */
+    Changes sync(String id, long since) {
+        if (!running()) {
+            return null;
+        }
+        String cookie = UUID.randomUUID().toString();
+        File cookieFile = Utils.join(cookies, cookie);
+        try {
+            cookieFile.createNewFile();
+        } catch (IOException excp) {
+            return null;
+        }
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+        HashSet<String> paths = new HashSet<>();
+        boolean known = true;
+        try {
+            while (true) {
+                Changes result = follow(cookie, id, since, known, paths,
+                        deadline);
+                if (result != null) {
+                    return result;
+                }
+                known = false;
+            }
+        } catch (IOException excp) {
+            return null;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Read the log until it answers COOKIE, adding the paths logged to
+     *  PATHS, and return them.  Reading starts from offset SINCE if the
+     *  log is of run ID and KNOWN is true, and after its start line if
+     *  not.  Returns changes with a null set of paths if the log is not
+     *  complete up to the answer, or no answer comes by time DEADLINE.
+     *  Returns null if the log was rolled over, so that reading must go
+     *  on in the new log, and throws IOException if there is no log. */
+    private Changes follow(String cookie, String id, long since,
+                           boolean known, HashSet<String> paths,
+                           long deadline)
+        throws IOException, InterruptedException {
+        try (RandomAccessFile log = new RandomAccessFile(logFile, "r")) {
+            String first = log.readLine();
+            if (first == null || !first.startsWith("!start ")) {
+                throw new IOException("no log");
+            }
+            String run = first.substring("!start ".length());
+            known = known && run.equals(id);
+            long pos = known ? since : log.getFilePointer();
+            while (true) {
+                log.seek(pos);
+                String line;
+                while ((line = readLine(log)) != null) {
+                    pos = log.getFilePointer();
+                    if (line.equals("!cookie " + cookie)) {
+                        return new Changes(run, pos, known ? paths : null);
+                    } else if (line.equals("!rollover")) {
+                        return null;
+                    } else if (line.equals("!overflow")) {
+                        known = false;
+                    } else if (!line.startsWith("!")) {
+                        paths.add(line);
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    Utils.join(cookies, cookie).delete();
+                    return new Changes(run, pos, null);
+                }
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /** Returns the next complete line of LOG, decoded as UTF-8, or null
+     *  if there is none yet.  A partly written line is left unread. */
+    private static String readLine(RandomAccessFile log) throws IOException {
+        long start = log.getFilePointer();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int c;
+        while ((c = log.read()) >= 0) {
+            if (c == '\n') {
+                return buf.toString(StandardCharsets.UTF_8);
+            }
+            buf.write(c);
+        }
+        log.seek(start);
+        return null;
+    }
+
+    /** Monitor the working tree until killed.  Prints a message and
+     *  returns if a monitor is already running. */
+    void run() throws IOException {
+        dir.mkdir();
+        cookies.mkdir();
+        try (FileChannel lockCh = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockCh.tryLock()) {
+            if (lock == null) {
+                System.out.println("A watcher is already running.");
+                return;
+            }
+            try (WatchService watcher =
+                     FileSystems.getDefault().newWatchService()) {
+                watch(watcher);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Begin a new run: replace the log with one holding only its start
+     *  line, and return a writer that appends to it. */
+    private Writer start() throws IOException {
+        File tmp = new File(logFile.getPath() + ".tmp");
+        Writer log = new BufferedWriter(Files.newBufferedWriter(
+                tmp.toPath(), StandardCharsets.UTF_8));
+        try {
+            log.write("!start " + UUID.randomUUID() + "\n");
+            log.flush();
+            Files.move(tmp.toPath(), logFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            log.close();
+            throw excp;
+        }
+        return log;
+    }
+
+    /** Log the events reported by WATCHER, forever, beginning a new run
+     *  whenever the log grows past its limit. */
+    private void watch(WatchService watcher)
+        throws IOException, InterruptedException {
+        HashMap<WatchKey, Path> dirs = new HashMap<>();
+        register(watcher, root, dirs);
+        WatchKey cookieKey = cookies.toPath().register(watcher, ENTRY_CREATE);
+        Writer log = start();
+        try {
+            while (true) {
+                watchOnce(watcher, cookieKey, dirs, log);
+                if (logFile.length() > logLimit) {
+                    Writer old = log;
+                    log = start();
+                    try (old) {
+                        old.write("!rollover\n");
+                    }
+                }
+            }
+        } finally {
+            log.close();
+        }
+    }
+
+    /** Wait for events from WATCHER and log those pending on the keys in
+     *  DIRS to LOG, answering the cookies reported on COOKIEKEY once they
+     *  are all logged. */
+    private void watchOnce(WatchService watcher, WatchKey cookieKey,
+                           HashMap<WatchKey, Path> dirs, Writer log)
+        throws IOException, InterruptedException {
+        ArrayList<String> answered = new ArrayList<>();
+        for (WatchKey key = watcher.take(); key != null;
+             key = watcher.poll()) {
+            if (key == cookieKey) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == ENTRY_CREATE) {
+                        answered.add(event.context().toString());
+                    }
+                }
+            } else {
+                record(watcher, key, dirs, log);
+            }
+            if (!key.reset()) {
+                dirs.remove(key);
+            }
+        }
+        for (String cookie : answered) {
+            log.write("!cookie " + cookie + "\n");
+            Utils.join(cookies, cookie).delete();
+        }
+        log.flush();
+    }
+
+    /** Log the events pending on KEY, one of the directory keys in DIRS
+     *  registered with WATCHER, watching any new directories. */
+    private void record(WatchService watcher, WatchKey key,
+                        HashMap<WatchKey, Path> dirs, Writer log)
+        throws IOException {
+        Path parent = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || parent == null) {
+                log.write("!overflow\n");
+                continue;
+            }
+            Path child = parent.resolve((Path) event.context());
+            if (parent.equals(root)
+                    && child.getFileName().toString().equals(META)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                register(watcher, child, dirs);
+            }
+            log.write(root.relativize(child).toString()
+                    .replace(File.separatorChar, '/') + "\n");
+        }
+    }
+
+    /** Watch START and every directory below it, other than .gitlet,
+     *  with WATCHER, recording each key in DIRS. */
+    private void register(WatchService watcher, Path start,
+                          HashMap<WatchKey, Path> dirs) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d,
+                    BasicFileAttributes attrs) throws IOException {
+                if (d.getFileName() != null
+                        && d.getFileName().toString().equals(META)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dirs.put(d.register(watcher, ENTRY_CREATE, ENTRY_DELETE,
+                        ENTRY_MODIFY), d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path f, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Watcher and of listing a watched working tree.
+ *  @author Kevin Wang
+ */
+public class WatcherTest {
+
+    /**
+     * working tree.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /**
+     * .gitlet/watch in the working tree.
+     */
+    private File watchDir;
+    /**
+     * thread standing in for, or running, the monitor.
+     */
+    private Thread monitor;
+
+    /** Make the metadata directory. */
+    @Before
+    public void setUp() {
+        watchDir = Utils.join(tmp.getRoot(), ".gitlet", "watch");
+        watchDir.mkdirs();
+    }
+
+    /** Stop the monitor, if one was started. */
+    @After
+    public void tearDown() throws InterruptedException {
+        if (monitor != null) {
+            monitor.interrupt();
+            monitor.join();
+        }
+    }
+
+    /** Returns the file NAME below the watch directory. */
+    private File file(String name) {
+        return new File(watchDir, name);
+    }
+
+    /** Append LINE to the monitor's log. */
+    private synchronized void log(String line) throws IOException {
+        Files.write(file("log").toPath(),
+                (line + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /** Stand in for a monitor that logs nothing but the answers to
+     *  cookies: hold its lock and answer each cookie as it appears. */
+    private void fakeMonitor() throws IOException {
+        file("cookies").mkdir();
+        log("!start fake");
+        monitor = new Thread(() -> {
+            try (FileChannel ch = FileChannel.open(file("lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = ch.lock()) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (String name : file("cookies").list()) {
+                        log("!cookie " + name);
+                        new File(file("cookies"), name).delete();
+                    }
+                    Thread.sleep(1);
+                }
+            } catch (IOException | InterruptedException excp) {
+                return;
+            }
+        });
+        monitor.start();
+        Watcher watcher = new Watcher(tmp.getRoot(), watchDir);
+        while (!watcher.running()) {
+            Thread.yield();
+        }
+    }
+
+    /** A watched tree is listed from the paths logged since the last
+     *  listing, and scanned in full once the log reports lost events. */
+    @Test
+    public void overflowRescans() throws IOException {
+        fakeMonitor();
+        tmp.write("a.txt", "");
+        WorkTree tree = new WorkTree(tmp.getRoot(), watchDir);
+        assertEquals(List.of("a.txt"), tree.files());
+        tmp.write("b.txt", "");
+        tmp.write("c.txt", "");
+        log("c.txt");
+        assertEquals(List.of("a.txt", "c.txt"), tree.files());
+        tree.save();
+
+        WorkTree reread = new WorkTree(tmp.getRoot(), watchDir);
+        assertEquals(List.of("a.txt", "c.txt"), reread.files());
+        log("!overflow");
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), reread.files());
+    }
+
+    /** The blob id found for a file is kept in the snapshot, and trusted
+     *  until the file is logged as changed or events are lost. */
+    @Test
+    public void knownIds() throws IOException {
+        fakeMonitor();
+        tmp.write("a.txt", "a");
+        tmp.write("b.txt", "b");
+        WorkTree tree = new WorkTree(tmp.getRoot(), watchDir);
+        tree.files();
+        assertNull(tree.knownSha1("a.txt"));
+        tree.found("a.txt", Utils.sha1("a"));
+        tree.found("b.txt", Utils.sha1("b"));
+        tree.found("missing.txt", Utils.sha1("m"));
+        tree.save();
+
+        WorkTree reread = new WorkTree(tmp.getRoot(), watchDir);
+        assertNull(reread.knownSha1("a.txt"));
+        log("b.txt");
+        reread.files();
+        assertEquals(Utils.sha1("a"), reread.knownSha1("a.txt"));
+        assertNull(reread.knownSha1("b.txt"));
+        assertNull(reread.knownSha1("missing.txt"));
+
+        log("!overflow");
+        reread.files();
+        assertNull(reread.knownSha1("a.txt"));
+    }
+
+    /** Once the log passes its limit the monitor starts a new run, which
+     *  a command following the old log notices and rescans after. */
+    @Test
+    public void rollover() throws IOException {
+        Watcher watcher = new Watcher(tmp.getRoot(), watchDir, 512);
+        monitor = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        monitor.start();
+        while (!watcher.running() || !file("log").isFile()) {
+            Thread.yield();
+        }
+        Watcher.Changes first = watcher.sync(null, 0);
+        assertNull(first.paths());
+        tmp.write("a.txt", "");
+        Watcher.Changes next = watcher.sync(first.id(), first.offset());
+        assertEquals(first.id(), next.id());
+        assertTrue(next.paths().contains("a.txt"));
+
+        Watcher.Changes rolled = next;
+        for (int i = 0; rolled.id().equals(first.id()); i += 1) {
+            assertTrue("log never rolled over", i < 100);
+            assertNotNull(rolled.paths());
+            tmp.write("file-with-a-long-name-" + i + ".txt", "");
+            rolled = watcher.sync(rolled.id(), rolled.offset());
+        }
+        assertNull(rolled.paths());
+
+        tmp.write("b.txt", "");
+        Watcher.Changes after = watcher.sync(rolled.id(), rolled.offset());
+        assertEquals(rolled.id(), after.id());
+        assertTrue(after.paths().contains("b.txt"));
+    }
+}
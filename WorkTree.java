@@ -0,0 +1,351 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** The working tree: every plain file below the repository root outside
+ *  .gitlet, named by its path relative to the root with "/" separators.
+ *  Directories are scanned in parallel on the common ForkJoin pool, one
+ *  task per directory, so a large tree is listed on all cores.  Symbolic
+ *  links are neither followed nor listed.
+ *
+ *  While a Watcher monitors the tree, the listing is not rescanned.  The
+ *  last listing is kept in .gitlet/watch/snapshot with the position in
+ *  the watcher's log it reflects, and each listing only revisits the
+ *  paths logged since.  Along with each file the snapshot keeps the blob
+ *  id it was found to hold after that position, if any; a file not
+ *  logged since still holds it, so it need not even be stat'ed.  If the
+ *  watcher stops, or reports that it lost events, the tree is scanned
+ *  in full and every recorded blob id is forgotten.
+ *  @author Kevin Wang
+ */
+class WorkTree {
+
+    /**
+     * name of the metadata directory, which is never scanned.
+     */
+    private static final String META = ".gitlet";
+
+    /**
+     * snapshot file magic.
+     */
+    private static final int MAGIC = 0x47534e50;
+    /**
+     * snapshot file version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * root directory.
+     */
+    private final Path root;
+    /**
+     * monitor of this tree.
+     */
+    private final Watcher watcher;
+    /**
+     * snapshot file.
+     */
+    private final File snapshotFile;
+    /**
+     * watcher run the snapshot is from, or null if there is none.
+     */
+    private String run;
+    /**
+     * watcher log offset the snapshot reflects.
+     */
+    private long offset;
+    /**
+     * every file in the tree, mapped to the blob id it is known to hold,
+     * or to "".  Null if unknown.
+     */
+    private TreeMap<String, String> listing;
+    /**
+     * true iff LISTING was brought up to date by the current command.
+     */
+    private boolean synced;
+    /**
+     * true iff the snapshot file has been read.
+     */
+    private boolean loaded;
+
+    /** The working tree rooted at ROOTDIR, whose watcher, if any, keeps
+     *  its files in WATCHDIR. */
+    WorkTree(File rootDir, File watchDir) {
+        this.root = rootDir.toPath().toAbsolutePath().normalize();
+        this.watcher = new Watcher(rootDir, watchDir);
+        this.snapshotFile = Utils.join(watchDir, "snapshot");
+    }
+
+    /** Returns the watcher of this tree. */
+    Watcher watcher() {
+        return watcher;
+    }
+
+    /** Returns the paths of all files in the working tree, sorted. */
+    List<String> files() {
+        return files("");
+    }
+
+    /** Returns the paths of all files at or below DIR, a directory path
+     *  relative to the root ("" for the root itself), sorted. */
+    List<String> files(String dir) {
+        if (refresh()) {
+            if (dir.isEmpty()) {
+                return new ArrayList<>(listing.keySet());
+            }
+            return new ArrayList<>(listing.subMap(dir + "/",
+                    dir + "0").keySet());
+        }
+        return scan(dir);
+    }
+
+    /** Returns the paths of all files at or below DIR, found by reading
+     *  every directory, sorted. */
+    private List<String> scan(String dir) {
+        Path start = dir.isEmpty() ? root : root.resolve(dir);
+        String prefix = dir.isEmpty() ? "" : dir + "/";
+        if (!Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+            return new ArrayList<>();
+        }
+        List<String> result =
+            ForkJoinPool.commonPool().invoke(new Scan(start, prefix));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Bring the listing up to date with the watcher, returning false if
+     *  there is no watcher to do so. */
+    private boolean refresh() {
+        load();
+        Watcher.Changes changes = watcher.sync(run, offset);
+        if (changes == null) {
+            run = null;
+            listing = null;
+            synced = false;
+            return false;
+        }
+        if (listing == null || changes.paths() == null) {
+            listing = new TreeMap<>();
+            for (String path : scan("")) {
+                listing.put(path, "");
+            }
+        } else {
+            for (String path : changes.paths()) {
+                listing.remove(path);
+                listing.subMap(path + "/", path + "0").clear();
+                for (String found : scan(path)) {
+                    listing.put(found, "");
+                }
+                if (Files.isRegularFile(root.resolve(path),
+                        LinkOption.NOFOLLOW_LINKS)) {
+                    listing.put(path, "");
+                }
+            }
+        }
+        run = changes.id();
+        offset = changes.offset();
+        synced = true;
+        return true;
+    }
+
+    /** Returns the blob id the working file PATH is known to hold, with
+     *  no need to read or stat it, or null if it is not known. */
+    synchronized String knownSha1(String path) {
+        if (!synced) {
+            return null;
+        }
+        String sha1 = listing.get(path);
+        return sha1 == null || sha1.isEmpty() ? null : sha1;
+    }
+
+    /** Record that the working file PATH was found, after the listing
+     *  was last brought up to date, to hold blob SHA1. */
+    synchronized void found(String path, String sha1) {
+        if (synced && listing.containsKey(path)) {
+            listing.put(path, sha1);
+        }
+    }
+
+    /** Record that this command has written the working file PATH. */
+    synchronized void written(String path) {
+        if (listing != null) {
+            listing.put(path, "");
+        }
+    }
+
+    /** Write the snapshot back if the listing was brought up to date,
+     *  replacing the old file with a single rename, or remove it if the
+     *  tree is not being watched. */
+    void save() {
+        if (!synced) {
+            if (loaded && run == null) {
+                snapshotFile.delete();
+            }
+            return;
+        }
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(run);
+            out.writeLong(offset);
+            out.writeInt(listing.size());
+            for (Map.Entry<String, String> e : listing.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synced = false;
+    }
+
+    /** Read the snapshot file, if it has not been read yet.  A missing or
+     *  unreadable snapshot is treated as absent. */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!snapshotFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        snapshotFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            String id = in.readUTF();
+            long end = in.readLong();
+            TreeMap<String, String> files = new TreeMap<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                files.put(path, in.readUTF());
+            }
+            run = id;
+            offset = end;
+            listing = files;
+        } catch (IOException excp) {
+            run = null;
+            listing = null;
+        }
+    }
+
+    /** Returns PATH, a file name relative to the root or absolute, as a
+     *  normalized path relative to the root, "" for the root itself, or
+     *  null if it lies outside the working tree. */
+    String relative(String path) {
+        Path p = root.resolve(path).normalize();
+        if (!p.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(p).toString().replace(File.separatorChar,
+                '/');
+    }
+
+    /** Delete the working file PATH, if it is a plain file, and then any
+     *  directories above it that this leaves empty, up to the root.
+     *  Returns true iff the file was deleted. */
+    boolean delete(String path) {
+        File f = root.resolve(path).toFile();
+        if (!f.isFile() || !f.delete()) {
+            return false;
+        }
+        synchronized (this) {
+            if (listing != null) {
+                listing.remove(path);
+            }
+        }
+        for (File dir = f.getParentFile();
+             dir != null && !dir.toPath().equals(root);
+             dir = dir.getParentFile()) {
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Lists the files below one directory, forking a task for each
+     *  subdirectory. */
+    private static class Scan extends RecursiveTask<List<String>> {
+
+        /**
+         * serialization version; scans are never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * directory to scan.
+         */
+        private final Path dir;
+        /**
+         * path of DIR relative to the root, with a trailing "/", or "".
+         */
+        private final String prefix;
+
+        /** A scan of DIRECTORY, whose files are named PATHPREFIX plus
+         *  their file names. */
+        Scan(Path directory, String pathPrefix) {
+            this.dir = directory;
+            this.prefix = pathPrefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            ArrayList<String> result = new ArrayList<>();
+            ArrayList<Scan> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    BasicFileAttributes attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isRegularFile()) {
+                        result.add(prefix + name);
+                    } else if (attrs.isDirectory() && !name.equals(META)) {
+                        Scan sub = new Scan(entry, prefix + name + "/");
+                        sub.fork();
+                        subtasks.add(sub);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Scan sub : subtasks) {
+                result.addAll(sub.join());
+            }
+            return result;
+        }
+    }
+}
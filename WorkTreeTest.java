@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of WorkTree without a watcher.
+ *  @author Kevin Wang
+ */
+public class WorkTreeTest {
+
+    /**
+     * working tree.
+     */
+    @Rule
+    public Fixtures tmp = new Fixtures();
+
+    /** Returns the working tree in the temporary directory. */
+    private WorkTree tree() {
+        return new WorkTree(tmp.getRoot(), tmp.file(".gitlet/watch"));
+    }
+
+    /** Every plain file at any depth is listed, sorted, except those in
+     *  .gitlet and symbolic links. */
+    @Test
+    public void nestedFiles() throws IOException {
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            String name = "d" + (i % 4) + "/e" + (i % 9) + "/f" + i;
+            tmp.write(name, "");
+            expected.add(name);
+        }
+        tmp.write("top", "");
+        expected.add("top");
+        tmp.write(".gitlet/HEAD", "");
+        tmp.write("d0/.gitlet/inner", "");
+        tmp.file("empty/dir").mkdirs();
+        Files.createSymbolicLink(tmp.file("link").toPath(),
+                tmp.file("top").toPath());
+        Files.createSymbolicLink(tmp.file("dirlink").toPath(),
+                tmp.file("d1").toPath());
+        Collections.sort(expected);
+        assertEquals(expected, tree().files());
+
+        List<String> d2 = tree().files("d2");
+        assertEquals(75, d2.size());
+        for (String path : d2) {
+            assertTrue(path, path.startsWith("d2/"));
+        }
+        ArrayList<String> e1 = new ArrayList<>();
+        for (String path : expected) {
+            if (path.startsWith("d2/e1/")) {
+                e1.add(path);
+            }
+        }
+        assertEquals(e1, tree().files("d2/e1"));
+        assertEquals(List.of(), tree().files("missing"));
+        assertEquals(List.of(), tree().files("top"));
+    }
+
+    /** Paths are made relative to the root, and those outside it are
+     *  rejected. */
+    @Test
+    public void relative() {
+        WorkTree tree = tree();
+        assertEquals("a/b", tree.relative("a/./c/../b"));
+        assertEquals("a/b", tree.relative(tmp.file("a/b").getPath()));
+        assertEquals("", tree.relative("."));
+        assertNull(tree.relative("../outside"));
+        assertNull(tree.relative("/"));
+    }
+
+    /** Deleting a file removes the directories it leaves empty, up to
+     *  the root. */
+    @Test
+    public void delete() {
+        tmp.write("a/b/c/only", "");
+        tmp.write("a/kept", "");
+        WorkTree tree = tree();
+        assertTrue(tree.delete("a/b/c/only"));
+        assertFalse(tmp.file("a/b").exists());
+        assertTrue(tmp.file("a/kept").isFile());
+        assertFalse(tree.delete("a/b/c/only"));
+        assertFalse(tree.delete("a"));
+        assertEquals(List.of("a/kept"), tree.files());
+    }
+}
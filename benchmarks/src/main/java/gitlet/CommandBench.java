@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The time each gitlet command takes on a SyntheticRepo, as the gitlet
+ *  program would run it less the start of the JVM.  Commands that change
+ *  the repository run on a state that undoes or redoes the change before
+ *  each invocation, outside the measured time; those that are naturally
+ *  paired, such as creating and removing a branch, are measured as the
+ *  pair.  The long-running watch and serve commands, and batch, which
+ *  runs other commands, are not measured.
+ *  @author Kevin Wang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBench {
+
+    /** An empty directory before each invocation. */
+    @State(Scope.Benchmark)
+    public static class Empty {
+        /**
+         * the directory.
+         */
+        private File dir;
+
+        /** Make the directory the current one. */
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            dir = Files.createTempDirectory("gitlet-jmh").toFile();
+            System.setProperty("user.dir", dir.getPath());
+        }
+
+        /** Delete the directory. */
+        @TearDown(Level.Invocation)
+        public void destroy() {
+            Bench.deleteTree(dir);
+        }
+    }
+
+    /** Create a repository. */
+    @Benchmark
+    public String init(Empty empty) throws IOException {
+        return SyntheticRepo.run("init");
+    }
+
+    /** Stage a changed file. */
+    @Benchmark
+    public String add(SyntheticRepo.Edited repo) throws IOException {
+        return SyntheticRepo.run("add", repo.path(0));
+    }
+
+    /** Commit one staged file. */
+    @Benchmark
+    public String commit(SyntheticRepo.Staged repo) throws IOException {
+        return SyntheticRepo.run("commit", "bench");
+    }
+
+    /** Remove a tracked file. */
+    @Benchmark
+    public String rm(SyntheticRepo.Tracked repo) throws IOException {
+        return SyntheticRepo.run("rm", repo.path(0));
+    }
+
+    /** Show the history of the current branch. */
+    @Benchmark
+    public String log(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("log");
+    }
+
+    /** Show every commit. */
+    @Benchmark
+    public String globalLog(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("global-log");
+    }
+
+    /** Find the commits with a message. */
+    @Benchmark
+    public String find(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("find", "commit 1");
+    }
+
+    /** Find the commits whose messages contain a word. */
+    @Benchmark
+    public String findGrep(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("find", "--grep", "change");
+    }
+
+    /** Show the status of the working tree. */
+    @Benchmark
+    public String status(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("status");
+    }
+
+    /** Restore a file from the head commit. */
+    @Benchmark
+    public String checkoutFile(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("checkout", "--", repo.path(0));
+    }
+
+    /** Restore a file from the first commit. */
+    @Benchmark
+    public String checkoutCommit(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("checkout", repo.first(), "--",
+                repo.path(0));
+    }
+
+    /** Switch to branch other and back to master. */
+    @Benchmark
+    public String checkoutBranch(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("checkout", "other")
+            + SyntheticRepo.run("checkout", "master");
+    }
+
+    /** Create a branch and remove it. */
+    @Benchmark
+    public String branch(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("branch", "bench")
+            + SyntheticRepo.run("rm-branch", "bench");
+    }
+
+    /** Reset master to the commit before the branches diverged, and back
+     *  to its head. */
+    @Benchmark
+    public String reset(SyntheticRepo repo) throws IOException {
+        return SyntheticRepo.run("reset", repo.base())
+            + SyntheticRepo.run("reset", repo.tip());
+    }
+
+    /** Merge branch other into master. */
+    @Benchmark
+    public String merge(SyntheticRepo.Diverged repo) throws IOException {
+        return SyntheticRepo.run("merge", "other");
+    }
+
+    /** Pack the objects of one new commit. */
+    @Benchmark
+    public String repack(SyntheticRepo.Loose repo) throws IOException {
+        return SyntheticRepo.run("repack");
+    }
+}
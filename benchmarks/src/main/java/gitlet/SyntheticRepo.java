@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** A synthetic repository built in a temporary directory for the command
+ *  benchmarks: FILES files of about FILESIZE bytes of source-like text,
+ *  spread over a few directories, and a history of DEPTH commits, each
+ *  after the first editing a twentieth of the files.  Branch "other"
+ *  leaves master at its last commit but one; master and other then each
+ *  edit a different set of files, so that merging other into master
+ *  succeeds without conflicts.
+ *
+ *  Commands run as the gitlet program would run them, each against a
+ *  newly opened GitletRepo that is closed afterwards, but in this JVM
+ *  and with their output captured.
+ *  @author Kevin Wang
+ */
+@State(Scope.Benchmark)
+public class SyntheticRepo {
+
+    /**
+     * directories the files are spread over.
+     */
+    private static final int DIRS = 16;
+    /**
+     * captured output of the last command.
+     */
+    private static final ByteArrayOutputStream OUTPUT =
+        new ByteArrayOutputStream();
+
+    /**
+     * number of files.
+     */
+    @Param({"100", "1000"})
+    public int files;
+    /**
+     * approximate bytes per file.
+     */
+    @Param({"1024", "16384"})
+    public int fileSize;
+    /**
+     * number of commits on master before the branches diverge.
+     */
+    @Param({"10", "100"})
+    public int depth;
+
+    /**
+     * repository directory.
+     */
+    private File dir;
+    /**
+     * file paths, relative to dir.
+     */
+    private String[] paths;
+    /**
+     * source of file contents.
+     */
+    private Random rand;
+    /**
+     * first commit.
+     */
+    private String first;
+    /**
+     * last commit shared by master and other.
+     */
+    private String base;
+    /**
+     * head of master.
+     */
+    private String tip;
+
+    /** Build the repository. */
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        dir = Files.createTempDirectory("gitlet-jmh").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        rand = new Random(files * 31L + fileSize);
+        run("init");
+        paths = new String[files];
+        for (int i = 0; i < files; i += 1) {
+            paths[i] = "d" + (i % DIRS) + "/f" + i + ".txt";
+            edit(i);
+        }
+        run(concat("add", paths));
+        run("commit", "commit 0");
+        first = head();
+        int touched = Math.max(1, files / 20);
+        for (int c = 1; c < depth; c += 1) {
+            String[] edited = new String[touched];
+            for (int k = 0; k < touched; k += 1) {
+                int i = (c * touched + k) % files;
+                edit(i);
+                edited[k] = paths[i];
+            }
+            run(concat("add", edited));
+            run("commit", "commit " + c);
+        }
+        base = head();
+        run("branch", "other");
+        int half = Math.max(1, files / 2);
+        editAndCommit(0, Math.min(touched, half), "master change");
+        tip = head();
+        run("checkout", "other");
+        editAndCommit(half, Math.min(files, half + touched), "other change");
+        run("checkout", "master");
+    }
+
+    /** Delete the repository. */
+    @TearDown(Level.Trial)
+    public void destroy() {
+        Bench.deleteTree(dir);
+    }
+
+    /** Returns the path of file I. */
+    String path(int i) {
+        return paths[i];
+    }
+
+    /** Returns the id of the first commit. */
+    String first() {
+        return first;
+    }
+
+    /** Returns the id of the last commit shared by master and other. */
+    String base() {
+        return base;
+    }
+
+    /** Returns the id of the head of master, before any merge. */
+    String tip() {
+        return tip;
+    }
+
+    /** Replace the contents of file I with new text. */
+    void edit(int i) {
+        File f = Utils.join(dir, paths[i]);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, Bench.sourceText(rand, fileSize));
+    }
+
+    /** Edit files FROM to TO - 1, stage them and commit them with
+     *  MESSAGE. */
+    void editAndCommit(int from, int to, String message) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            edit(i);
+        }
+        run(concat("add", Arrays.copyOfRange(paths, from, to)));
+        run("commit", message);
+    }
+
+    /** Returns the id of the current head commit. */
+    String head() throws IOException {
+        String log = run("log", "-n", "1");
+        int start = log.indexOf("commit ") + "commit ".length();
+        return log.substring(start, start + Hasher.ID_LENGTH);
+    }
+
+    /** Run the command ARGS on the repository in the directory named by
+     *  the user.dir property and return its output. */
+    static String run(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        OUTPUT.reset();
+        PrintStream capture = new PrintStream(OUTPUT, false,
+                StandardCharsets.UTF_8);
+        System.setOut(capture);
+        try {
+            GitletRepo repo = new GitletRepo();
+            Main.run(repo, args);
+            repo.close();
+        } finally {
+            capture.flush();
+            System.setOut(stdout);
+        }
+        return OUTPUT.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns COMMAND followed by ARGS. */
+    private static String[] concat(String command, String... args) {
+        String[] result = new String[args.length + 1];
+        result[0] = command;
+        System.arraycopy(args, 0, result, 1, args.length);
+        return result;
+    }
+
+    /** The repository with one file edited before each invocation. */
+    public static class Edited extends SyntheticRepo {
+        /** Edit the first file. */
+        @Setup(Level.Invocation)
+        public void prepare() {
+            edit(0);
+        }
+    }
+
+    /** The repository with one file edited and staged before each
+     *  invocation. */
+    public static class Staged extends SyntheticRepo {
+        /** Edit and stage the first file. */
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            edit(0);
+            run("add", path(0));
+        }
+    }
+
+    /** The repository with the first file present and tracked before
+     *  each invocation. */
+    public static class Tracked extends SyntheticRepo {
+        /** Restore the first file and unstage its removal. */
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            run("checkout", "--", path(0));
+            run("add", path(0));
+        }
+    }
+
+    /** The repository with master at its unmerged head before each
+     *  invocation. */
+    public static class Diverged extends SyntheticRepo {
+        /** Move master back to before any merge. */
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            run("reset", tip());
+        }
+    }
+
+    /** The repository with one more commit of loose objects before each
+     *  invocation. */
+    public static class Loose extends SyntheticRepo {
+        /** Commit an edit of the first file. */
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            editAndCommit(0, 1, "loose");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The time taken by Diff, by hashing through Utils.sha1 and the
+ *  Hashers, and by Utils.serialize.  Hashing is also measured the way
+ *  Utils.sha1 first worked, looking up a MessageDigest for every hash and
+ *  formatting it with a Formatter, for comparison.
+ *  @author Kevin Wang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBench {
+
+    /** Two versions of a text of LINES lines, the second with CHANGED
+     *  percent of the lines replaced. */
+    @State(Scope.Benchmark)
+    public static class Texts {
+        /**
+         * number of lines.
+         */
+        @Param({"100", "1000", "3000"})
+        public int lines;
+        /**
+         * percentage of lines changed.
+         */
+        @Param({"1", "10"})
+        public int changed;
+
+        /**
+         * the original.
+         */
+        private List<String> before;
+        /**
+         * the changed version.
+         */
+        private List<String> after;
+
+        /** Make the texts. */
+        @Setup(Level.Trial)
+        public void build() {
+            Random rand = new Random(lines);
+            before = new ArrayList<>(List.of(
+                    Bench.sourceText(rand, lines * 40).split("\n")));
+            before = before.subList(0, Math.min(lines, before.size()));
+            after = new ArrayList<>(before);
+            for (int i = 0; i < after.size(); i += 1) {
+                if (rand.nextInt(100) < changed) {
+                    after.set(i, "changed " + rand.nextInt());
+                }
+            }
+        }
+    }
+
+    /** Bytes to hash and a blob and commit to serialize, of about SIZE
+     *  bytes. */
+    @State(Scope.Benchmark)
+    public static class Values {
+        /**
+         * size in bytes.
+         */
+        @Param({"64", "4096", "1048576"})
+        public int size;
+
+        /**
+         * bytes to hash.
+         */
+        private byte[] bytes;
+        /**
+         * blob to serialize.
+         */
+        private Blob blob;
+        /**
+         * commit to serialize, with about SIZE / 64 files.
+         */
+        private Commit commit;
+
+        /** Make the values. */
+        @Setup(Level.Trial)
+        public void build() {
+            Random rand = new Random(size);
+            bytes = new byte[size];
+            rand.nextBytes(bytes);
+            String text = Bench.sourceText(rand, size);
+            blob = new Blob("file.txt", text, Utils.sha1(text));
+            HashMap<String, String> files = new HashMap<>();
+            for (int i = 0; i < Math.max(1, size / 64); i += 1) {
+                files.put("src/file" + i + ".java",
+                        Utils.sha1(Integer.toString(i)));
+            }
+            commit = new Commit("message", Utils.sha1("parent"),
+                    Utils.sha1(Codec.encodeMap(files)));
+            commit.cacheBlobs(files);
+        }
+    }
+
+    /** Compare the two texts. */
+    @Benchmark
+    public int[] diff(Texts texts) {
+        Diff d = new Diff();
+        d.setSequences(texts.before, texts.after);
+        return d.diffs();
+    }
+
+    /** Hash with Utils.sha1. */
+    @Benchmark
+    public String sha1(Values values) {
+        return Utils.sha1(values.bytes);
+    }
+
+    /** Hash the way Utils.sha1 first did. */
+    @Benchmark
+    public String lookupSha1(Values values) {
+        return Bench.lookupSha1(values.bytes);
+    }
+
+    /** Hash with SHA-256. */
+    @Benchmark
+    public String sha256(Values values) {
+        return Hasher.SHA256.hash(values.bytes);
+    }
+
+    /** Serialize a blob. */
+    @Benchmark
+    public byte[] serializeBlob(Values values) {
+        return Utils.serialize(values.blob);
+    }
+
+    /** Serialize a commit. */
+    @Benchmark
+    public byte[] serializeCommit(Values values) {
+        return Utils.serialize(values.commit);
+    }
+}